@@ -0,0 +1,59 @@
+package org.yah.tools.asciiart.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.yah.tools.asciiart.GrayscaleImage;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GrayscaleImage.average for small and large boxes, with and without the summed-area table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AverageBenchmark {
+
+    private static final int BOXES = 1024;
+
+    @Param({"4", "32", "256"})
+    public int box;
+
+    @Param({"true", "false"})
+    public boolean summedAreaTable;
+
+    private GrayscaleImage grayscaleImage;
+    private final int[] xs = new int[BOXES];
+    private final int[] ys = new int[BOXES];
+    private int next;
+
+    @Setup
+    public void setup() {
+        final BufferedImage image = SyntheticImages.create(2048, 2048, BufferedImage.TYPE_INT_ARGB);
+        grayscaleImage = GrayscaleImage.from(image);
+        if (summedAreaTable)
+            grayscaleImage.computeSummedAreaTable();
+        final Random random = new Random(42);
+        for (int i = 0; i < BOXES; i++) {
+            xs[i] = random.nextInt(image.getWidth() - box);
+            ys[i] = random.nextInt(image.getHeight() - box);
+        }
+    }
+
+    @Benchmark
+    public float average() {
+        final int i = next++ & (BOXES - 1);
+        return grayscaleImage.average(xs[i], ys[i], xs[i] + box, ys[i] + box);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 2, time = 1)
+    @Measurement(iterations = 3, time = 1)
+    public GrayscaleImage computeSummedAreaTable() {
+        return grayscaleImage.computeSummedAreaTable();
+    }
+}
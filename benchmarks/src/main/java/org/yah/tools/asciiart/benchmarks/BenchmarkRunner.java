@@ -0,0 +1,43 @@
+package org.yah.tools.asciiart.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.module.ModuleFinder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JMH entry point, same options than org.openjdk.jmh.Main, always recording allocation rate with the GC profiler.
+ * Benchmarks are forked with the vector API module when the JDK has it, for the vectorized pixel kernels.
+ */
+public class BenchmarkRunner {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp()) {
+            commandLineOptions.showHelp();
+            return;
+        }
+        if (commandLineOptions.shouldList()) {
+            new Runner(commandLineOptions).list();
+            return;
+        }
+        final List<String> jvmArgsAppend = new ArrayList<>(commandLineOptions.getJvmArgsAppend().orElse(List.of()));
+        if (ModuleFinder.ofSystem().find(VECTOR_MODULE).isPresent())
+            jvmArgsAppend.add("--add-modules=" + VECTOR_MODULE);
+        new Runner(new OptionsBuilder()
+                .parent(commandLineOptions)
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend(jvmArgsAppend.toArray(new String[0]))
+                .build())
+                .run();
+    }
+}
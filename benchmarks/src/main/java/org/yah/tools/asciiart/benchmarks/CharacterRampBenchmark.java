@@ -0,0 +1,67 @@
+package org.yah.tools.asciiart.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.yah.tools.asciiart.CharacterRamp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CharacterRamp.create and CharacterRamp.get for short and long symbol sets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CharacterRampBenchmark {
+
+    public static final String SHORT_SYMBOLS = " .:-=+*#%@";
+    public static final String LONG_SYMBOLS = " .'`^\",:;Il!i><~+_-?][}{1)(|\\/tfjrxnuvczXYUJCLQ0OZmwqpdbkhao*#MW&8%B@$";
+
+    private static final int LUMINANCES = 4096;
+
+    @Param({"SHORT", "LONG"})
+    public String symbols;
+
+    private String symbolSet;
+    private CharacterRamp characterRamp;
+    private final float[] luminances = new float[LUMINANCES];
+
+    @Setup
+    public void setup() {
+        symbolSet = "SHORT".equals(symbols) ? SHORT_SYMBOLS : LONG_SYMBOLS;
+        characterRamp = CharacterRamp.create(symbolSet);
+        final Random random = new Random(42);
+        for (int i = 0; i < LUMINANCES; i++) {
+            luminances[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public CharacterRamp create() {
+        return CharacterRamp.create(symbolSet);
+    }
+
+    /**
+     * {@value #LUMINANCES} lookups per operation
+     */
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        for (float luminance : luminances) {
+            blackhole.consume(characterRamp.get(luminance));
+        }
+    }
+
+    /**
+     * {@value #LUMINANCES} lookups per operation
+     */
+    @Benchmark
+    public void getExact(Blackhole blackhole) {
+        for (float luminance : luminances) {
+            blackhole.consume(characterRamp.getExact(luminance));
+        }
+    }
+}
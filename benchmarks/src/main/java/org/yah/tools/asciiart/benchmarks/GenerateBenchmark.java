@@ -0,0 +1,72 @@
+package org.yah.tools.asciiart.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.yah.tools.asciiart.AsciiArtGenerator;
+import org.yah.tools.asciiart.CharactersImage;
+import org.yah.tools.asciiart.CharactersLayout;
+import org.yah.tools.asciiart.GenerationContext;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AsciiArtGenerator.generate at several source and target sizes, from the decoded image to characters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenerateBenchmark {
+
+    @Param({"640x480", "4000x3000"})
+    public String size;
+
+    @Param({"80", "400"})
+    public int width;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    @Param({"false", "true"})
+    public boolean lazyTransform;
+
+    @Param({"false", "true"})
+    public boolean areaAverage;
+
+    private AsciiArtGenerator generator;
+    private BufferedImage image;
+    private int flags;
+
+    @Setup
+    public void setup() {
+        generator = new AsciiArtGenerator(CharacterRampBenchmark.SHORT_SYMBOLS);
+        image = SyntheticImages.create(size, "3BYTE_BGR");
+        flags = AsciiArtGenerator.NORMALIZE;
+        if (parallel)
+            flags |= AsciiArtGenerator.PARALLEL;
+        if (lazyTransform)
+            flags |= AsciiArtGenerator.LAZY_TRANSFORM;
+        if (areaAverage)
+            flags |= AsciiArtGenerator.AREA_AVERAGE;
+    }
+
+    @Benchmark
+    public CharactersImage generate() {
+        return generator.generate(image, width, -1, flags);
+    }
+
+    /**
+     * Same generation reusing the buffers of a per thread context: the allocation rate no longer depends on sizes.
+     */
+    @Benchmark
+    public CharactersLayout generateWithContext(Context context) {
+        return generator.generate(image, width, -1, flags, context.context);
+    }
+
+    @State(Scope.Thread)
+    public static class Context {
+        private final GenerationContext context = new GenerationContext();
+    }
+}
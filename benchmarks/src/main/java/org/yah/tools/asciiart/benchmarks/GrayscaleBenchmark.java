@@ -0,0 +1,62 @@
+package org.yah.tools.asciiart.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.yah.tools.asciiart.GrayscaleImage;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GrayscaleImage.from across raster types, normalize and invert, with the scalar and vectorized pixel kernels.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrayscaleBenchmark {
+
+    @Param({"640x480", "4000x3000"})
+    public String size;
+
+    /**
+     * USHORT_GRAY has no direct reader and goes through BufferedImage.getRGB
+     */
+    @Param({"INT_ARGB", "INT_RGB", "3BYTE_BGR", "4BYTE_ABGR", "BYTE_GRAY", "USHORT_GRAY"})
+    public String type;
+
+    /**
+     * Vectorized kernels, if the JDK supports them. Each parameters combination is run in its own fork, where the
+     * kernels are selected once.
+     */
+    @Param({"true", "false"})
+    public boolean vector;
+
+    private BufferedImage image;
+    private GrayscaleImage grayscaleImage;
+
+    @Setup
+    public void setup() {
+        System.setProperty("org.yah.tools.asciiart.vector", Boolean.toString(vector));
+        image = SyntheticImages.create(size, type);
+        grayscaleImage = GrayscaleImage.from(image);
+    }
+
+    @Benchmark
+    public GrayscaleImage from() {
+        return GrayscaleImage.from(image);
+    }
+
+    @Benchmark
+    public GrayscaleImage normalize() {
+        grayscaleImage.normalize();
+        return grayscaleImage;
+    }
+
+    @Benchmark
+    public GrayscaleImage invert() {
+        grayscaleImage.invert();
+        return grayscaleImage;
+    }
+}
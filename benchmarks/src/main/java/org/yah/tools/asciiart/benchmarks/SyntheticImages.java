@@ -0,0 +1,60 @@
+package org.yah.tools.asciiart.benchmarks;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Deterministic images generated in process: a gradient, some shapes and noise.
+ */
+final class SyntheticImages {
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * @param size "widthxheight"
+     * @param type a BufferedImage TYPE_* constant name, without the TYPE_ prefix
+     */
+    static BufferedImage create(String size, String type) {
+        final int index = size.indexOf('x');
+        return create(Integer.parseInt(size.substring(0, index)),
+                Integer.parseInt(size.substring(index + 1)),
+                imageType(type));
+    }
+
+    static BufferedImage create(int width, int height, int type) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setPaint(new GradientPaint(0, 0, Color.WHITE, width, height, Color.DARK_GRAY));
+            g.fillRect(0, 0, width, height);
+            final Random random = new Random(42);
+            for (int i = 0; i < 64; i++) {
+                g.setColor(new Color(random.nextInt(0x1000000)));
+                final int x = random.nextInt(width), y = random.nextInt(height);
+                final int w = 1 + random.nextInt(Math.max(1, width / 4)), h = 1 + random.nextInt(Math.max(1, height / 4));
+                if (i % 2 == 0)
+                    g.fillOval(x, y, w, h);
+                else
+                    g.drawLine(x, y, x + w, y + h);
+            }
+        } finally {
+            g.dispose();
+        }
+        final Random random = new Random(43);
+        for (int i = 0; i < width * height / 64; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), 0xFF000000 | random.nextInt(0x1000000));
+        }
+        return image;
+    }
+
+    static int imageType(String type) {
+        try {
+            return BufferedImage.class.getField("TYPE_" + type).getInt(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Invalid image type " + type, e);
+        }
+    }
+}
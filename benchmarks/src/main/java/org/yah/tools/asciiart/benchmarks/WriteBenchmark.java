@@ -0,0 +1,48 @@
+package org.yah.tools.asciiart.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.yah.tools.asciiart.AsciiArtGenerator;
+import org.yah.tools.asciiart.CharactersImage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CharactersImage.toFile for several output sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+    @Param({"80", "400", "2000"})
+    public int width;
+
+    private CharactersImage charactersImage;
+    private File output;
+
+    @Setup
+    public void setup() throws IOException {
+        final AsciiArtGenerator generator = new AsciiArtGenerator(CharacterRampBenchmark.SHORT_SYMBOLS);
+        charactersImage = generator.generate(SyntheticImages.create("4000x3000", "INT_RGB"), width, -1,
+                AsciiArtGenerator.NORMALIZE);
+        output = File.createTempFile("ascii-art-benchmark", ".txt");
+        output.deleteOnExit();
+    }
+
+    @TearDown
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        output.delete();
+    }
+
+    @Benchmark
+    public File toFile() throws IOException {
+        charactersImage.toFile("\n", output);
+        return output;
+    }
+}
@@ -0,0 +1,71 @@
+package org.yah.tools.asciiart;
+
+import org.yah.tools.asciiart.GrayscaleImage.PixelFormat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Convert a {@link FrameSequence} to an ASCII animation file written by {@link AnimationWriter}.<br/>
+ * A single grayscale image and characters buffer are allocated for the sequence and reused for every frame.
+ */
+public class AnimationConverter {
+
+    public static final int DEFAULT_FRAME_DELAY = 100;
+
+    private final AsciiArtGenerator generator;
+    private final PixelFormat format;
+    private final boolean direct;
+    private final boolean delta;
+    private final int defaultDelay;
+
+    /**
+     * @param delta        write the changed characters runs instead of full frames
+     * @param defaultDelay frame delay in milliseconds, when not defined by the input
+     */
+    public AnimationConverter(AsciiArtGenerator generator,
+                              PixelFormat format,
+                              boolean direct,
+                              boolean delta,
+                              int defaultDelay) {
+        this.generator = Objects.requireNonNull(generator, "generator is null");
+        this.format = Objects.requireNonNull(format, "format is null");
+        this.direct = direct;
+        this.delta = delta;
+        this.defaultDelay = defaultDelay;
+    }
+
+    /**
+     * @param input an animated image file, or a directory of numbered frames
+     * @param flags generator flags, color modes are ignored
+     * @return the number of converted frames
+     */
+    public int convert(File input,
+                       File output,
+                       int targetWidth,
+                       int targetHeight,
+                       int flags,
+                       String lineSeparator) throws IOException {
+        final boolean parallel = (flags & AsciiArtGenerator.PARALLEL) != 0;
+        final int frameFlags = flags & ~(AsciiArtGenerator.TRUECOLOR | AsciiArtGenerator.ANSI256);
+        try (FrameSequence frames = FrameSequence.open(input, defaultDelay)) {
+            final GrayscaleImage grayscaleImage = GrayscaleImage.create(frames.getWidth(), frames.getHeight(),
+                    format, direct);
+            final CharactersLayout layout = generator.layout(frames.getWidth(), frames.getHeight(),
+                    targetWidth, targetHeight);
+            final char[][] chars = new char[layout.getHeight()][layout.getWidth()];
+            try (AnimationWriter writer = new AnimationWriter(
+                    new CharactersWriter(new FileOutputStream(output).getChannel(), lineSeparator), delta)) {
+                while (frames.next()) {
+                    grayscaleImage.read(frames.getFrame(), 0, parallel);
+                    final CharactersLayout frameLayout = generator.generate(grayscaleImage,
+                            targetWidth, targetHeight, frameFlags, chars);
+                    writer.writeFrame(chars, frameLayout, frames.getDelay());
+                }
+                return writer.getFrames();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.yah.tools.asciiart;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Write the frames of an ASCII animation, as full frames, or as the runs of characters changed since the previous
+ * frame:
+ * <pre>
+ * #animation &lt;width&gt; &lt;height&gt; &lt;margin&gt;
+ * #frame &lt;delay ms&gt;
+ * &lt;height rows, prefixed by margin spaces&gt;
+ * #delta &lt;delay ms&gt; &lt;runs&gt;
+ * &lt;row&gt; &lt;column&gt; &lt;characters&gt;
+ * </pre>
+ * The first frame is always a full frame. Delta columns do not include the margin.
+ */
+public class AnimationWriter implements Closeable {
+
+    /**
+     * Unchanged characters between two changed runs of a row that are written rather than starting a new run
+     */
+    private static final int MERGE_GAP = 4;
+
+    private final CharactersWriter writer;
+    private final boolean delta;
+
+    private CharactersLayout layout;
+    private char[][] previous;
+    private int frames;
+
+    /**
+     * [run * 3] row, column and length of the changed runs of the current frame
+     */
+    private int[] runs = new int[3 * 64];
+    private final StringBuilder line = new StringBuilder();
+    private char[] lineChars = new char[0];
+
+    public AnimationWriter(CharactersWriter writer, boolean delta) {
+        this.writer = Objects.requireNonNull(writer, "writer is null");
+        this.delta = delta;
+    }
+
+    /**
+     * @param chars the frame characters, as generated using layout
+     * @param delay delay before the next frame, in milliseconds
+     */
+    public void writeFrame(char[][] chars, CharactersLayout layout, int delay) throws IOException {
+        if (this.layout == null) {
+            this.layout = layout;
+            line.setLength(0);
+            line.append("#animation ").append(layout.getWidth())
+                    .append(' ').append(layout.getHeight())
+                    .append(' ').append(layout.getMargin());
+            writeLine();
+        } else if (!sameLayout(layout)) {
+            throw new IllegalArgumentException("frame layout " + layout.getWidth() + "x" + layout.getHeight()
+                    + " does not match " + this.layout.getWidth() + "x" + this.layout.getHeight());
+        }
+
+        if (delta && previous != null)
+            writeDelta(chars, delay);
+        else
+            writeFull(chars, delay);
+        frames++;
+    }
+
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Flush and close the characters writer
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void writeFull(char[][] chars, int delay) throws IOException {
+        final int width = layout.getWidth();
+        final int height = layout.getHeight();
+        line.setLength(0);
+        line.append("#frame ").append(delay);
+        writeLine();
+        for (int y = 0; y < height; y++) {
+            writer.writeRow(chars[y], 0, width, layout.getMargin());
+        }
+        if (delta) {
+            previous = new char[height][];
+            for (int y = 0; y < height; y++) {
+                previous[y] = Arrays.copyOf(chars[y], width);
+            }
+        }
+    }
+
+    private void writeDelta(char[][] chars, int delay) throws IOException {
+        final int width = layout.getWidth();
+        final int height = layout.getHeight();
+        int runCount = 0;
+        for (int y = 0; y < height; y++) {
+            final char[] row = chars[y];
+            final char[] previousRow = previous[y];
+            int runStart = -1, runEnd = -1;
+            for (int x = 0; x < width; x++) {
+                if (row[x] == previousRow[x])
+                    continue;
+                if (runStart >= 0 && x - runEnd > MERGE_GAP) {
+                    runCount = addRun(runCount, y, runStart, runEnd);
+                    runStart = -1;
+                }
+                if (runStart < 0)
+                    runStart = x;
+                runEnd = x + 1;
+            }
+            if (runStart >= 0)
+                runCount = addRun(runCount, y, runStart, runEnd);
+        }
+
+        line.setLength(0);
+        line.append("#delta ").append(delay).append(' ').append(runCount);
+        writeLine();
+        for (int run = 0; run < runCount; run++) {
+            final int y = runs[run * 3], x = runs[run * 3 + 1], length = runs[run * 3 + 2];
+            line.setLength(0);
+            line.append(y).append(' ').append(x).append(' ').append(chars[y], x, length);
+            writeLine();
+            System.arraycopy(chars[y], x, previous[y], x, length);
+        }
+    }
+
+    private int addRun(int runCount, int y, int start, int end) {
+        if (runs.length < (runCount + 1) * 3)
+            runs = Arrays.copyOf(runs, runs.length * 2);
+        runs[runCount * 3] = y;
+        runs[runCount * 3 + 1] = start;
+        runs[runCount * 3 + 2] = end - start;
+        return runCount + 1;
+    }
+
+    private void writeLine() throws IOException {
+        final int length = line.length();
+        if (lineChars.length < length)
+            lineChars = new char[Math.max(length, lineChars.length * 2)];
+        line.getChars(0, length, lineChars, 0);
+        writer.writeRow(lineChars, 0, length, 0);
+    }
+
+    private boolean sameLayout(CharactersLayout layout) {
+        return layout.getWidth() == this.layout.getWidth()
+                && layout.getHeight() == this.layout.getHeight()
+                && layout.getMargin() == this.layout.getMargin();
+    }
+}
@@ -0,0 +1,138 @@
+package org.yah.tools.asciiart;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Write colored characters rows using ANSI SGR foreground escapes.<br/>
+ * An escape is only written when the color changes: consecutive cells with the same color, and spaces whose color
+ * is not visible, share the current SGR sequence, across rows.
+ */
+public class AnsiColorWriter {
+
+    public enum Mode {
+        /**
+         * 24 bits colors: ESC[38;2;r;g;bm
+         */
+        TRUECOLOR,
+        /**
+         * xterm 256 colors palette: ESC[38;5;nm
+         */
+        ANSI256
+    }
+
+    private static final char[] RESET = "\033[0m".toCharArray();
+
+    /**
+     * xterm 6x6x6 color cube levels
+     */
+    private static final int[] CUBE_LEVELS = {0, 95, 135, 175, 215, 255};
+
+    private final CharactersWriter writer;
+    private final Mode mode;
+
+    /**
+     * current SGR color (0xRRGGBB or palette index), -1 if none
+     */
+    private int current = -1;
+    private final char[] escape = new char[32];
+
+    public AnsiColorWriter(CharactersWriter writer, Mode mode) {
+        this.writer = Objects.requireNonNull(writer, "writer is null");
+        this.mode = Objects.requireNonNull(mode, "mode is null");
+    }
+
+    /**
+     * Write margin spaces, row[offset, offset + length[ colored by colors[offset, offset + length[ (0xRRGGBB), and
+     * the line separator
+     */
+    public void writeRow(char[] row, int[] colors, int offset, int length, int margin) throws IOException {
+        writer.writeSpaces(margin);
+        final int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (row[i] == ' ')
+                continue;
+            final int color = mode == Mode.TRUECOLOR ? colors[i] : paletteIndex(colors[i]);
+            if (color != current) {
+                writer.write(row, start, i - start);
+                start = i;
+                writeEscape(color);
+                current = color;
+            }
+        }
+        writer.write(row, start, end - start);
+        writer.newLine();
+    }
+
+    /**
+     * Reset the terminal color, if any was set
+     */
+    public void reset() throws IOException {
+        if (current >= 0) {
+            writer.write(RESET, 0, RESET.length);
+            current = -1;
+        }
+    }
+
+    private void writeEscape(int color) throws IOException {
+        int length = 0;
+        escape[length++] = '\033';
+        escape[length++] = '[';
+        escape[length++] = '3';
+        escape[length++] = '8';
+        escape[length++] = ';';
+        if (mode == Mode.TRUECOLOR) {
+            escape[length++] = '2';
+            escape[length++] = ';';
+            length = appendInt(escape, length, (color >> 16) & 0xFF);
+            escape[length++] = ';';
+            length = appendInt(escape, length, (color >> 8) & 0xFF);
+            escape[length++] = ';';
+            length = appendInt(escape, length, color & 0xFF);
+        } else {
+            escape[length++] = '5';
+            escape[length++] = ';';
+            length = appendInt(escape, length, color);
+        }
+        escape[length++] = 'm';
+        writer.write(escape, 0, length);
+    }
+
+    private static int appendInt(char[] chars, int offset, int value) {
+        if (value >= 100)
+            chars[offset++] = (char) ('0' + value / 100);
+        if (value >= 10)
+            chars[offset++] = (char) ('0' + value / 10 % 10);
+        chars[offset++] = (char) ('0' + value % 10);
+        return offset;
+    }
+
+    /**
+     * @return the closest xterm 256 colors palette index, from the color cube or the gray ramp
+     */
+    static int paletteIndex(int color) {
+        final int red = (color >> 16) & 0xFF, green = (color >> 8) & 0xFF, blue = color & 0xFF;
+        final int cr = cubeIndex(red), cg = cubeIndex(green), cb = cubeIndex(blue);
+        final int cubeDistance = distance(red, green, blue, CUBE_LEVELS[cr], CUBE_LEVELS[cg], CUBE_LEVELS[cb]);
+
+        final int average = (red + green + blue) / 3;
+        final int grayIndex = average > 238 ? 23 : Math.max(0, (average - 3) / 10);
+        final int gray = 8 + grayIndex * 10;
+        final int grayDistance = distance(red, green, blue, gray, gray, gray);
+
+        return grayDistance < cubeDistance ? 232 + grayIndex : 16 + 36 * cr + 6 * cg + cb;
+    }
+
+    private static int cubeIndex(int value) {
+        if (value < 48)
+            return 0;
+        if (value < 115)
+            return 1;
+        return (value - 35) / 40;
+    }
+
+    private static int distance(int r1, int g1, int b1, int r2, int g2, int b2) {
+        return (r1 - r2) * (r1 - r2) + (g1 - g2) * (g1 - g2) + (b1 - b2) * (b1 - b2);
+    }
+}
@@ -0,0 +1,82 @@
+package org.yah.tools.asciiart;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Coverage of the source pixels by each target pixel along one axis, for an area average resampling.<br/>
+ * Target pixel i covers source interval [i * source / target, (i + 1) * source / target[, each overlapped source pixel
+ * is weighted by its overlap length, weights of a target pixel sum to 1. When upsampling, a target pixel is covered by
+ * one source pixel, or blends the two it straddles.
+ */
+final class AreaWeights {
+
+    /**
+     * Most recently used weights kept, images of a batch often share their dimensions
+     */
+    private static final int CACHE_SIZE = 32;
+
+    private static final Map<Long, AreaWeights> CACHE = new LinkedHashMap<Long, AreaWeights>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, AreaWeights> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @return the cached weights resampling source pixels to target pixels
+     */
+    static AreaWeights of(int source, int target) {
+        if (source <= 0 || target <= 0)
+            throw new IllegalArgumentException("Invalid sizes " + source + " -> " + target);
+        final Long key = (long) source << 32 | target;
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(key, k -> new AreaWeights(source, target));
+        }
+    }
+
+    final int source;
+    final int target;
+
+    /**
+     * [i] first source pixel covered by target pixel i
+     */
+    final int[] starts;
+
+    /**
+     * [i] offset in weights of target pixel i weights, [target] is the weights length
+     */
+    final int[] offsets;
+
+    /**
+     * weights of the source pixels starts[i] ... covered by target pixel i, from offsets[i] to offsets[i + 1]
+     */
+    final float[] weights;
+
+    private AreaWeights(int source, int target) {
+        this.source = source;
+        this.target = target;
+        final double scale = source / (double) target;
+        starts = new int[target];
+        offsets = new int[target + 1];
+        int count = 0;
+        for (int i = 0; i < target; i++) {
+            final double from = i * scale, to = (i + 1) * scale;
+            starts[i] = (int) from;
+            offsets[i] = count;
+            count += Math.min(source, (int) Math.ceil(to)) - starts[i];
+        }
+        offsets[target] = count;
+        weights = new float[count];
+        for (int i = 0; i < target; i++) {
+            final double from = i * scale, to = (i + 1) * scale;
+            float sum = 0;
+            for (int w = offsets[i], s = starts[i]; w < offsets[i + 1] - 1; w++, s++) {
+                weights[w] = (float) ((Math.min(to, s + 1) - Math.max(from, s)) / scale);
+                sum += weights[w];
+            }
+            // the last weight completes the float sum to 1, so that a white area stays exactly white
+            weights[offsets[i + 1] - 1] = 1f - sum;
+        }
+    }
+}
@@ -3,10 +3,13 @@ package org.yah.tools.asciiart;
 import org.apache.commons.cli.*;
 
 import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class AsciiArtCommandLine {
@@ -29,40 +32,309 @@ public class AsciiArtCommandLine {
             return;
         }
 
+        if (commandLine.hasOption(SERVER)) {
+            serve(commandLine);
+            return;
+        }
+
+        final ConversionStats stats = commandLine.hasOption(STATS) ? ConversionStats.record() : null;
+        if (commandLine.hasOption(STREAM)) {
+            stream(commandLine, stats);
+            return;
+        }
+
         final List<File> files = getInputFiles(commandLine);
         final File output = getOutputDirectory(commandLine);
         final String symbols = getSymbols(commandLine);
-        String lineSeparator = getLinseSeparator(commandLine);
-        int flags = getFlags(commandLine);
-        int targetWidth = getInt(WIDTH, commandLine);
-        int targetHeight = getInt(HEIGHT, commandLine);
+        final String lineSeparator = getLinseSeparator(commandLine);
+        final int flags = getFlags(commandLine);
+        final int[] targetWidths = getTargetWidths(commandLine);
+        final int targetHeight = getInt(HEIGHT, commandLine, -1);
+        final GrayscaleImage.PixelFormat pixelFormat = getPixelFormat(commandLine);
+        final boolean direct = commandLine.hasOption(DIRECT);
 
-        AsciiArtGenerator generator = new AsciiArtGenerator(symbols);
-        for (File inputFile : files) {
-            final BufferedImage image;
+        final int threads = getInt(THREADS, commandLine, Runtime.getRuntime().availableProcessors());
+        final int queueSize = getInt(QUEUE_SIZE, commandLine, threads * 2);
+        if (threads <= 0 || queueSize <= 0) {
+            System.err.println("threads and queue size must be positive");
+            System.exit(1);
+        }
+
+        AsciiArtGenerator generator = new AsciiArtGenerator(getCharacterRamp(commandLine, symbols),
+                getColorBits(commandLine));
+        if (commandLine.hasOption(ANIMATION)) {
+            final int targetWidth = getTargetWidth(commandLine);
+            if (commandLine.hasOption(INCREMENTAL) || commandLine.hasOption(WATCH)) {
+                System.err.println("Incremental conversion is only supported for images");
+                System.exit(1);
+            }
+            final AnimationConverter animationConverter = new AnimationConverter(generator, pixelFormat, direct,
+                    getDeltaAnimation(commandLine),
+                    getInt(FRAME_DELAY, commandLine, AnimationConverter.DEFAULT_FRAME_DELAY));
+            convertAnimations(animationConverter, files, output, targetWidth, targetHeight, flags, lineSeparator,
+                    stats);
+            return;
+        }
+        final ImageDecoder decoder = new ImageDecoder(generator, pixelFormat, direct,
+                ImageDecoder.DEFAULT_MAX_REGION_PIXELS, flags);
+        final Function<File, List<String>> outputNames;
+        final BatchConverter batchConverter;
+        if (targetWidths.length == 1) {
+            final int targetWidth = targetWidths[0];
+            outputNames = inputFile -> Collections.singletonList(outputName(inputFile));
+            batchConverter = new BatchConverter(
+                    input -> decoder.decode(input, targetWidth, targetHeight),
+                    image -> generator.generate(image, targetWidth, targetHeight, flags),
+                    lineSeparator, threads, queueSize);
+        } else {
+            // decoded once for the largest width, the others are sampled from the reduced images
+            final int maxWidth = Arrays.stream(targetWidths).max().getAsInt();
+            outputNames = inputFile -> Arrays.stream(targetWidths)
+                    .mapToObj(width -> outputName(inputFile, width))
+                    .collect(Collectors.toList());
+            batchConverter = BatchConverter.multiple(
+                    input -> decoder.decode(input, maxWidth, targetHeight),
+                    image -> generator.generate(image, targetWidths, targetHeight, flags),
+                    lineSeparator, threads, queueSize);
+        }
+
+        final boolean watch = commandLine.hasOption(WATCH);
+        ConversionIndex index = null;
+        if (commandLine.hasOption(INCREMENTAL) || watch) {
+            final File indexFile = new File(output, DirectoryConverter.INDEX_FILE);
             try {
-                image = ImageIO.read(inputFile);
+                Files.createDirectories(output.toPath());
+                index = ConversionIndex.load(indexFile.toPath());
             } catch (IOException e) {
-                System.err.println("Error reading image " + inputFile + ": " + e.getMessage());
+                System.err.println("Error reading index " + indexFile + ": " + e.getMessage());
                 System.exit(1);
-                return;
-            }
-            final CharactersImage generated = generator.generate(image, targetWidth, targetHeight, flags);
-            String name = inputFile.getName();
-            // change extension
-            final int index = name.lastIndexOf('.');
-            if (index > 0)
-                name = name.substring(0, index);
-            name += ".txt";
-            File outputFile = new File(output, name);
+            }
+        }
+        // everything changing the outputs
+        final String parameters = String.join("|", symbols, Arrays.toString(targetWidths),
+                Integer.toString(targetHeight), Integer.toString(flags & ~AsciiArtGenerator.PARALLEL),
+                lineSeparator, Integer.toString(getColorBits(commandLine)), pixelFormat.name());
+        final DirectoryConverter directoryConverter = new DirectoryConverter(batchConverter, output, outputNames,
+                index, ConversionIndex.parametersHash(parameters));
+
+        ImageIO.setUseCache(false);
+        final DirectoryConverter.Report report;
+        try {
+            report = directoryConverter.convert(files, System.err);
+            if (report.getFiles() > 1 || report.getSkipped() > 0)
+                report.print(System.out);
+            printStats(stats);
+            if (watch) {
+                System.out.println("Watching for changes, press Ctrl+C to stop");
+                directoryConverter.watch(files, System.out, System.err);
+            }
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            System.err.println("Error converting images: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+            return;
+        }
+        if (report.getFailed() > 0)
+            System.exit(1);
+    }
+
+    private static void serve(CommandLine commandLine) {
+        final String value = commandLine.getOptionValue(SERVER);
+        final int index = value.lastIndexOf(':');
+        final String host = index < 0 ? "127.0.0.1" : value.substring(0, index);
+        int port = -1;
+        try {
+            port = Integer.parseInt(value.substring(index + 1));
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        if (port < 0 || port > 0xFFFF) {
+            System.err.println("Invalid server port " + value);
+            System.exit(1);
+        }
+        final int threads = getInt(THREADS, commandLine, Runtime.getRuntime().availableProcessors());
+        final int queueSize = getInt(QUEUE_SIZE, commandLine, threads * 2);
+        if (threads <= 0 || queueSize <= 0) {
+            System.err.println("threads and queue size must be positive");
+            System.exit(1);
+        }
+        final ConversionServer server;
+        try {
+            server = new ConversionServer(new InetSocketAddress(host, port), threads, queueSize,
+                    getPixelFormat(commandLine), commandLine.hasOption(DIRECT));
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        server.start();
+        System.out.println("Listening on http://" + host + ":" + server.getAddress().getPort()
+                + ", POST images to /convert, GET /stats");
+    }
+
+    private static void printStats(ConversionStats stats) {
+        if (stats != null)
+            stats.print(System.out);
+    }
+
+    private static void stream(CommandLine commandLine, ConversionStats stats) {
+        final RawFrameStreamer.Format format = getStreamFormat(commandLine);
+        if (!commandLine.hasOption(FRAME_SIZE)) {
+            System.err.println("frame size is required to stream raw frames");
+            System.exit(1);
+        }
+        final String frameSize = commandLine.getOptionValue(FRAME_SIZE);
+        final String[] dimensions = frameSize.split("x");
+        int frameWidth = 0, frameHeight = 0;
+        try {
+            if (dimensions.length == 2) {
+                frameWidth = Integer.parseInt(dimensions[0]);
+                frameHeight = Integer.parseInt(dimensions[1]);
+            }
+        } catch (NumberFormatException e) {
+            frameWidth = 0;
+        }
+        if (frameWidth <= 0 || frameHeight <= 0) {
+            System.err.println("Invalid frame size " + frameSize);
+            System.exit(1);
+        }
+        double fps = RawFrameStreamer.DEFAULT_FPS;
+        if (commandLine.hasOption(FPS)) {
             try {
-                generated.toFile(lineSeparator, outputFile);
-            } catch (IOException e) {
-                System.err.println("Error writing output " + outputFile + ": " + e.getMessage());
+                fps = Double.parseDouble(commandLine.getOptionValue(FPS));
+            } catch (NumberFormatException e) {
+                fps = -1;
+            }
+            if (!(fps >= 0)) {
+                System.err.println("Invalid fps " + commandLine.getOptionValue(FPS));
+                System.exit(1);
+            }
+        }
+
+        final AsciiArtGenerator generator = new AsciiArtGenerator(
+                getCharacterRamp(commandLine, getSymbols(commandLine)),
+                getColorBits(commandLine));
+        final RawFrameStreamer streamer = new RawFrameStreamer(generator, format, frameWidth, frameHeight,
+                getTargetWidth(commandLine), getInt(HEIGHT, commandLine, -1), getFlags(commandLine), fps,
+                getLinseSeparator(commandLine));
+        final RawFrameStreamer.Report report;
+        try (FileOutputStream output = new FileOutputStream(FileDescriptor.out)) {
+            report = streamer.run(System.in, output.getChannel());
+        } catch (IOException e) {
+            System.err.println("Error streaming frames: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+            return;
+        }
+        report.print(System.err);
+        if (stats != null)
+            stats.print(System.err);
+    }
+
+    /**
+     * @return the -w values, or -1 if not set
+     */
+    private static int[] getTargetWidths(CommandLine commandLine) {
+        if (!commandLine.hasOption(WIDTH))
+            return new int[]{-1};
+        final String[] values = commandLine.getOptionValues(WIDTH);
+        final int[] widths = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                widths[i] = Integer.parseInt(values[i]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid width: " + values[i]);
                 System.exit(1);
-                return;
             }
         }
+        return widths;
+    }
+
+    /**
+     * @return the single -w value, or -1 if not set
+     */
+    private static int getTargetWidth(CommandLine commandLine) {
+        final int[] targetWidths = getTargetWidths(commandLine);
+        if (targetWidths.length > 1) {
+            System.err.println("Multiple widths are only supported for images");
+            System.exit(1);
+        }
+        return targetWidths[0];
+    }
+
+    private static int getColorBits(CommandLine commandLine) {
+        final int colorBits = getInt(COLOR_BITS, commandLine, AsciiArtGenerator.DEFAULT_COLOR_BITS);
+        if (colorBits < 1 || colorBits > 8) {
+            System.err.println("color bits must be between 1 and 8");
+            System.exit(1);
+        }
+        return colorBits;
+    }
+
+    private static RawFrameStreamer.Format getStreamFormat(CommandLine commandLine) {
+        final String value = commandLine.getOptionValue(STREAM);
+        try {
+            return RawFrameStreamer.Format.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid stream format " + value);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static void convertAnimations(AnimationConverter animationConverter,
+                                          List<File> files,
+                                          File output,
+                                          int targetWidth,
+                                          int targetHeight,
+                                          int flags,
+                                          String lineSeparator,
+                                          ConversionStats stats) {
+        ImageIO.setUseCache(false);
+        int failed = 0;
+        for (File inputFile : files) {
+            final File outputFile = new File(output, outputName(inputFile));
+            try {
+                animationConverter.convert(inputFile, outputFile, targetWidth, targetHeight, flags, lineSeparator);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error converting " + inputFile + ": " + e.getMessage());
+                failed++;
+            }
+        }
+        printStats(stats);
+        if (failed > 0)
+            System.exit(1);
+    }
+
+    private static boolean getDeltaAnimation(CommandLine commandLine) {
+        final String mode = commandLine.getOptionValue(ANIMATION);
+        if (mode.equals("delta"))
+            return true;
+        if (!mode.equals("full")) {
+            System.err.println("Invalid animation mode " + mode);
+            System.exit(1);
+        }
+        return false;
+    }
+
+    private static String outputName(File inputFile) {
+        String name = inputFile.getName();
+        // change extension
+        final int index = name.lastIndexOf('.');
+        if (index > 0)
+            name = name.substring(0, index);
+        return name + ".txt";
+    }
+
+    private static String outputName(File inputFile, int width) {
+        final String name = outputName(inputFile);
+        return name.substring(0, name.length() - ".txt".length()) + "-" + width + ".txt";
     }
 
     private static final String OUTPUT = "o";
@@ -72,10 +344,31 @@ public class AsciiArtCommandLine {
     private static final String INVERT = "i";
     private static final String WIDTH = "w";
     private static final String HEIGHT = "h";
+    private static final String PARALLEL = "p";
+    private static final String THREADS = "t";
+    private static final String QUEUE_SIZE = "q";
+    private static final String PIXEL_FORMAT = "pixel-format";
+    private static final String DIRECT = "direct";
+    private static final String PROFILE = "profile";
+    private static final String LAZY_TRANSFORM = "lazy-transform";
+    private static final String ANIMATION = "a";
+    private static final String FRAME_DELAY = "frame-delay";
+    private static final String STREAM = "stream";
+    private static final String FRAME_SIZE = "frame-size";
+    private static final String FPS = "fps";
+    private static final String COLOR = "c";
+    private static final String COLOR_BITS = "color-bits";
+    private static final String MODE = "m";
+    private static final String DITHER = "d";
+    private static final String AREA_AVERAGE = "area-average";
+    private static final String INCREMENTAL = "incremental";
+    private static final String WATCH = "watch";
+    private static final String STATS = "stats";
+    private static final String SERVER = "server";
 
     private static final Options options = createOptions();
 
-    private static int getInt(String opt, CommandLine commandLine) {
+    private static int getInt(String opt, CommandLine commandLine, int defaultValue) {
         if (commandLine.hasOption(opt)) {
             final String value = commandLine.getOptionValue(opt);
             try {
@@ -85,7 +378,7 @@ public class AsciiArtCommandLine {
                 System.exit(1);
             }
         }
-        return -1;
+        return defaultValue;
     }
 
     private static String getLinseSeparator(CommandLine commandLine) {
@@ -101,13 +394,105 @@ public class AsciiArtCommandLine {
         return System.lineSeparator();
     }
 
+    private static GrayscaleImage.PixelFormat getPixelFormat(CommandLine commandLine) {
+        if (commandLine.hasOption(PIXEL_FORMAT)) {
+            final String value = commandLine.getOptionValue(PIXEL_FORMAT);
+            try {
+                return GrayscaleImage.PixelFormat.valueOf(value);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid pixel format " + value);
+                System.exit(1);
+            }
+        }
+        return GrayscaleImage.PixelFormat.FLOAT;
+    }
+
     private static int getFlags(CommandLine commandLine) {
         int flags = AsciiArtGenerator.NORMALIZE;
         if (commandLine.hasOption(INVERT))
             flags |= AsciiArtGenerator.INVERT;
+        if (commandLine.hasOption(PARALLEL))
+            flags |= AsciiArtGenerator.PARALLEL;
+        if (commandLine.hasOption(LAZY_TRANSFORM))
+            flags |= AsciiArtGenerator.LAZY_TRANSFORM;
+        if (commandLine.hasOption(AREA_AVERAGE))
+            flags |= AsciiArtGenerator.AREA_AVERAGE;
+        if (commandLine.hasOption(MODE)) {
+            final String mode = commandLine.getOptionValue(MODE);
+            if (mode.equals("quadrant")) {
+                flags |= AsciiArtGenerator.QUADRANT;
+            } else if (mode.equals("braille")) {
+                flags |= AsciiArtGenerator.BRAILLE;
+            } else if (mode.equals("shape")) {
+                flags |= AsciiArtGenerator.SHAPE;
+            } else if (mode.equals("edges")) {
+                flags |= AsciiArtGenerator.EDGES;
+            } else if (!mode.equals("ramp")) {
+                System.err.println("Invalid mode " + mode);
+                System.exit(1);
+            }
+        }
+        if (commandLine.hasOption(DITHER)) {
+            final String dither = commandLine.getOptionValue(DITHER);
+            if (dither.equals("floyd-steinberg")) {
+                flags |= AsciiArtGenerator.FLOYD_STEINBERG;
+            } else if (dither.equals("atkinson")) {
+                flags |= AsciiArtGenerator.ATKINSON;
+            } else if (dither.equals("bayer")) {
+                flags |= AsciiArtGenerator.BAYER;
+            } else {
+                System.err.println("Invalid dithering " + dither);
+                System.exit(1);
+            }
+        }
+        if (commandLine.hasOption(COLOR)) {
+            final String mode = commandLine.getOptionValue(COLOR);
+            if (mode.equals("truecolor")) {
+                flags |= AsciiArtGenerator.TRUECOLOR;
+            } else if (mode.equals("256")) {
+                flags |= AsciiArtGenerator.ANSI256;
+            } else {
+                System.err.println("Invalid color mode " + mode);
+                System.exit(1);
+            }
+        }
         return flags;
     }
 
+    /**
+     * Load the ramp from the profile file, exiting if it is invalid or does not match the symbols, or create it and
+     * write the profile if the file does not exist.
+     */
+    private static CharacterRamp getCharacterRamp(CommandLine commandLine, String symbols) {
+        if (!commandLine.hasOption(PROFILE))
+            return CharacterRamp.create(symbols);
+
+        final File profile = new File(commandLine.getOptionValue(PROFILE));
+        if (profile.exists()) {
+            final CharacterRamp characterRamp;
+            try (InputStream is = new BufferedInputStream(new FileInputStream(profile))) {
+                characterRamp = CharacterRamp.load(is);
+            } catch (IOException e) {
+                System.err.println("Error reading profile " + profile + ": " + e.getMessage());
+                System.exit(1);
+                return null;
+            }
+            if (!characterRamp.getSymbols().equals(symbols) || !characterRamp.getFont().equals(CharacterRamp.FONT)) {
+                System.err.println("Profile " + profile + " does not match the symbols and font, remove it or use another file");
+                System.exit(1);
+            }
+            return characterRamp;
+        }
+
+        final CharacterRamp characterRamp = CharacterRamp.create(symbols);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(profile))) {
+            characterRamp.save(os);
+        } catch (IOException e) {
+            System.err.println("Error writing profile " + profile + ": " + e.getMessage());
+        }
+        return characterRamp;
+    }
+
     private static String getSymbols(CommandLine commandLine) {
         if (commandLine.hasOption(SYMBOLS))
             return commandLine.getOptionValue(SYMBOLS);
@@ -140,7 +525,7 @@ public class AsciiArtCommandLine {
 
     private static void printHelp() {
         HelpFormatter formatter = new HelpFormatter();
-        formatter.printHelp("ascii-art [OPTIONS] <files>...", options);
+        formatter.printHelp("ascii-art [OPTIONS] <files or directories>...", options);
     }
 
     private static Options createOptions() {
@@ -178,7 +563,8 @@ public class AsciiArtCommandLine {
                 .longOpt("width")
                 .argName("width")
                 .numberOfArgs(1)
-                .desc("Output width in characters. Default to input image width")
+                .desc("Output width in characters. Repeat to write one output per width, named "
+                        + "<name>-<width>.txt, from a single decoding. Default to input image width")
                 .type(Integer.class)
                 .build());
 
@@ -190,6 +576,157 @@ public class AsciiArtCommandLine {
                 .type(Integer.class)
                 .build());
 
+        options.addOption(Option.builder(PARALLEL)
+                .longOpt("parallel")
+                .desc("Split each image conversion in parallel tasks, for few large images")
+                .build());
+
+        options.addOption(Option.builder(THREADS)
+                .longOpt("threads")
+                .argName("threads")
+                .numberOfArgs(1)
+                .desc("Number of decode and convert workers. Default to available processors")
+                .type(Integer.class)
+                .build());
+
+        options.addOption(Option.builder(QUEUE_SIZE)
+                .longOpt("queue")
+                .argName("size")
+                .numberOfArgs(1)
+                .desc("Maximum number of images waiting between pipeline stages. Default to 2 * threads")
+                .type(Integer.class)
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(PROFILE)
+                .argName("file")
+                .numberOfArgs(1)
+                .desc("Character ramp profile: created if missing, loaded otherwise. Rejected if it does not match the symbols")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(PIXEL_FORMAT)
+                .argName("format")
+                .numberOfArgs(1)
+                .desc("Grayscale pixel storage: FLOAT, SHORT or BYTE, default to FLOAT")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(DIRECT)
+                .desc("Store grayscale pixels off-heap")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(LAZY_TRANSFORM)
+                .desc("Normalize and invert by remapping the character ramp instead of the pixels. A few "
+                        + "characters per million can differ, about 1 in 6000 with SHORT or BYTE pixels. Not "
+                        + "applied with floyd-steinberg or atkinson dithering")
+                .build());
+
+        options.addOption(Option.builder(MODE)
+                .longOpt("mode")
+                .argName("mode")
+                .numberOfArgs(1)
+                .desc("Rendering mode: ramp to map each character box average to the symbols, shape to match "
+                        + "the symbols shapes, edges to draw the strong edges with | / - \\ _, quadrant for 2x2 "
+                        + "blocks or braille for 2x4 dots per character. "
+                        + "Default to ramp")
+                .build());
+
+        options.addOption(Option.builder(DITHER)
+                .longOpt("dither")
+                .argName("mode")
+                .numberOfArgs(1)
+                .desc("Dither the ramp symbols: floyd-steinberg or atkinson error diffusion, or bayer ordered "
+                        + "dithering. Ramp mode only")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(AREA_AVERAGE)
+                .desc("Resample with the fractional coverage of the pixels on the characters boxes borders, "
+                        + "and upsample images smaller than the output")
+                .build());
+
+        options.addOption(Option.builder(COLOR)
+                .longOpt("color")
+                .argName("mode")
+                .numberOfArgs(1)
+                .desc("Color characters with ANSI escapes: truecolor or 256. Not used for animations")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(COLOR_BITS)
+                .argName("bits")
+                .numberOfArgs(1)
+                .desc("Bits per channel of the truecolor colors, from 1 to 8. Less bits share more escapes. "
+                        + "Default to " + AsciiArtGenerator.DEFAULT_COLOR_BITS)
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(INCREMENTAL)
+                .desc("Skip the images unchanged since converted with the same options, using the index "
+                        + DirectoryConverter.INDEX_FILE + " of the output directory")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(WATCH)
+                .desc("After converting, keep converting the images added or modified in the input directories. "
+                        + "Implies --" + INCREMENTAL)
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(STATS)
+                .desc("Print the percentiles of each conversion stage duration. Stages are also recorded as JFR "
+                        + "events")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(SERVER)
+                .argName("[host:]port")
+                .numberOfArgs(1)
+                .desc("Convert the images posted to http://host:port/convert, with the options as query "
+                        + "parameters, using threads workers and a queue of queue size requests. Host default to "
+                        + "127.0.0.1")
+                .build());
+
+        options.addOption(Option.builder(ANIMATION)
+                .longOpt("animation")
+                .argName("mode")
+                .numberOfArgs(1)
+                .desc("Convert animated images and directories of numbered frames to an animation: full frames, "
+                        + "or delta to write only the characters changed since the previous frame")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(FRAME_DELAY)
+                .argName("ms")
+                .numberOfArgs(1)
+                .desc("Frame delay of directories frames and images without delay. Default to "
+                        + AnimationConverter.DEFAULT_FRAME_DELAY)
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(STREAM)
+                .argName("format")
+                .numberOfArgs(1)
+                .desc("Render raw frames read from standard input to the terminal: gray8 or rgb24")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(FRAME_SIZE)
+                .argName("WxH")
+                .numberOfArgs(1)
+                .desc("Size of the streamed raw frames, in pixels")
+                .build());
+
+        options.addOption(Option.builder()
+                .longOpt(FPS)
+                .argName("rate")
+                .numberOfArgs(1)
+                .desc("Maximum streamed frames per second, 0 for no limit. Default to "
+                        + (int) RawFrameStreamer.DEFAULT_FPS)
+                .build());
+
         return options;
     }
 }
@@ -1,34 +1,783 @@
 package org.yah.tools.asciiart;
 
+import org.yah.tools.asciiart.ConversionStats.Stage;
+
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
 public class AsciiArtGenerator {
 
 
     public static final int NORMALIZE = 1;
     public static final int INVERT = 2;
+    /**
+     * Split grayscale conversion, normalize, invert and sampling in fork-join tasks. Same result than sequential.
+     */
+    public static final int PARALLEL = 4;
+    /**
+     * Apply normalize and invert to the character ramp thresholds instead of the pixels, using the min and max
+     * computed during the grayscale conversion. The grayscale image is left unchanged.<br/>
+     * Boxes are averaged in double, so that a box of equal pixels gives the same character than the pixels
+     * transform. A character whose float pixels sum rounds across a threshold may still differ: 2 of 3.8 million on
+     * the sample images with {@link GrayscaleImage.PixelFormat#FLOAT} pixels, about 1 in 6000 with quantized pixels,
+     * which the pixels transform quantizes again. Error diffusion would propagate these differences, it transforms
+     * the pixels.
+     */
+    public static final int LAZY_TRANSFORM = 8;
+    /**
+     * Keep the average color of each character, written as ANSI 24 bits colors. Requires a grayscale image keeping
+     * colors.
+     */
+    public static final int TRUECOLOR = 16;
+    /**
+     * Keep the average color of each character, written as ANSI 256 colors palette indices. Requires a grayscale
+     * image keeping colors.
+     */
+    public static final int ANSI256 = 32;
+    /**
+     * Render each character as 2x2 quadrant blocks, each block set if its average is below the middle gray, so that
+     * dark areas are drawn like the dense symbols of the ramp.
+     */
+    public static final int QUADRANT = 64;
+    /**
+     * Render each character as 2x4 braille dots, each dot set if its average is below the middle gray, so that dark
+     * areas are drawn like the dense symbols of the ramp.
+     */
+    public static final int BRAILLE = 128;
+    /**
+     * Select the symbol whose 3x3 luminances grid is the nearest to the character box grid, rather than its average
+     * luminance only, to follow edges and lines.
+     */
+    public static final int SHAPE = 256;
+    /**
+     * Area average resample the image to the characters (or sub cells) grid, weighting the pixels on the boxes borders
+     * by their coverage, instead of averaging whole pixels boxes. Also upsamples images smaller than the grid.
+     */
+    public static final int AREA_AVERAGE = 512;
+    /**
+     * Draw the strong edges of the image with the | / - \ _ glyphs, oriented by the gradient of a 3x3 grid of each
+     * character box, and the other characters with the ramp. The sub boxes are averaged like the shape mode ones,
+     * through the {@link #SUMMED_AREA_TABLE} only if set.
+     */
+    public static final int EDGES = 1024;
+    /**
+     * Diffuse the ramp quantization error of each character to its neighbours with the Floyd-Steinberg weights.
+     * Rows are sampled sequentially, with {@link #PARALLEL} too.
+     */
+    public static final int FLOYD_STEINBERG = 2048;
+    /**
+     * Diffuse 3/4 of the ramp quantization error of each character to its neighbours with the Atkinson weights.
+     * Rows are sampled sequentially, with {@link #PARALLEL} too.
+     */
+    public static final int ATKINSON = 4096;
+    /**
+     * Ordered dithering of the ramp symbols with an 8x8 Bayer matrix.
+     */
+    public static final int BAYER = 8192;
+    /**
+     * Average the character boxes through a summed-area table of the grayscale image, built before sampling and kept
+     * until its pixels change. The table takes 8 bytes per pixel: worth it when the same grayscale image is sampled
+     * several times, such as several widths of one image. Without this flag, boxes are averaged from the pixels, or
+     * through the table if {@link GrayscaleImage#computeSummedAreaTable()} was called.
+     */
+    public static final int SUMMED_AREA_TABLE = 16384;
+
+    public static final int DEFAULT_COLOR_BITS = 8;
+
+    /**
+     * Minimum number of pixels per character (or sub cell) of the pyramid level a target width is sampled from
+     */
+    public static final int PYRAMID_MIN_STEP = 2;
+
+    /**
+     * Sub cells value below which a sub cell is set, after normalize and invert
+     */
+    private static final float SUB_CELL_THRESHOLD = 0.5f;
+
+    /**
+     * Sub boxes grid of a character in edges mode
+     */
+    private static final int EDGE_GRID = 3;
+    /**
+     * Gradient magnitude, relative to a black to white step across the character, above which an edge is drawn
+     */
+    private static final float EDGE_THRESHOLD = 0.3f;
+    /**
+     * Sobel gradient magnitude of the edge threshold: the sobel response to a black to white step is 4
+     */
+    private static final float EDGE_MAGNITUDE = 4 * EDGE_THRESHOLD;
+    /**
+     * tan(22.5°): gradients closer than this to an axis draw a vertical or horizontal edge, others a diagonal one
+     */
+    private static final float EDGE_AXIS_SLOPE = 0.41421357f;
+    /**
+     * Fraction of the vertical gradient by which the lower rows step must exceed the upper rows step to draw _
+     */
+    private static final float EDGE_TIE = 1 / 16f;
+
+    /**
+     * @return the color mode selected by the flags, or null if not colored
+     */
+    public static AnsiColorWriter.Mode colorMode(int flags) {
+        if ((flags & TRUECOLOR) != 0)
+            return AnsiColorWriter.Mode.TRUECOLOR;
+        if ((flags & ANSI256) != 0)
+            return AnsiColorWriter.Mode.ANSI256;
+        return null;
+    }
+
+    /**
+     * @return the sub cell mode selected by the flags, or null to use the character ramp
+     */
+    public static SubCellMode subCellMode(int flags) {
+        if ((flags & BRAILLE) != 0)
+            return SubCellMode.BRAILLE;
+        if ((flags & QUADRANT) != 0)
+            return SubCellMode.QUADRANT;
+        return null;
+    }
 
     private final CharacterRamp characterRamp;
+    private final int colorBits;
 
     /**
      * @param symbols the ASCII character to use as result
      */
     public AsciiArtGenerator(String symbols) {
-        this.characterRamp = CharacterRamp.create(symbols);
+        this(CharacterRamp.create(symbols));
+    }
+
+    public AsciiArtGenerator(CharacterRamp characterRamp) {
+        this(characterRamp, DEFAULT_COLOR_BITS);
+    }
+
+    /**
+     * @param colorBits bits per channel of the characters colors, less bits let more consecutive characters share
+     *                  the same color escape
+     */
+    public AsciiArtGenerator(CharacterRamp characterRamp, int colorBits) {
+        if (colorBits < 1 || colorBits > 8)
+            throw new IllegalArgumentException("Invalid color bits " + colorBits);
+        this.characterRamp = Objects.requireNonNull(characterRamp, "characterRamp is null");
+        this.colorBits = colorBits;
     }
 
     public CharactersImage generate(BufferedImage image,
                                     int targetWidth,
                                     int targetHeight,
                                     int flags) {
+        final GrayscaleImage grayscaleImage = GrayscaleImage.from(image, GrayscaleImage.PixelFormat.FLOAT, false,
+                (flags & PARALLEL) != 0, colorMode(flags) != null);
+        return generate(grayscaleImage, targetWidth, targetHeight, flags);
+    }
+
+    public CharactersImage generate(GrayscaleImage grayscaleImage,
+                                    int targetWidth,
+                                    int targetHeight,
+                                    int flags) {
+        final CharactersLayout layout = layout(grayscaleImage.getWidth(), grayscaleImage.getHeight(),
+                targetWidth, targetHeight);
+        final char[][] chars = new char[layout.getHeight()][layout.getWidth()];
+        final AnsiColorWriter.Mode colorMode = colorMode(flags);
+        final int[][] colors = colorMode != null ? new int[layout.getHeight()][layout.getWidth()] : null;
+        sample(grayscaleImage, layout, flags, chars, colors, null);
+        return new CharactersImage(chars, colors, colorMode, layout.getMargin());
+    }
+
+    public List<CharactersImage> generate(BufferedImage image,
+                                          int[] targetWidths,
+                                          int targetHeight,
+                                          int flags) {
+        final GrayscaleImage grayscaleImage = GrayscaleImage.from(image, GrayscaleImage.PixelFormat.FLOAT, false,
+                (flags & PARALLEL) != 0, colorMode(flags) != null);
+        return generate(grayscaleImage, targetWidths, targetHeight, flags);
+    }
+
+    /**
+     * Generate several widths of the same image, sampling each width from a pyramid of successive 2x reductions of
+     * the grayscale image rather than from the full resolution: the smallest level keeping at least
+     * {@link #PYRAMID_MIN_STEP} pixels per character (or sub cell) is used. Layouts are the ones of the grayscale
+     * image.<br/>
+     * The grayscale image is left unchanged: normalize and invert are applied to the reduced levels, with the min
+     * and max of the grayscale image, and to the full resolution through the ramp with {@link #LAZY_TRANSFORM}, or to
+     * a copy of its pixels.
+     *
+     * @return the characters images, in targetWidths order
+     */
+    public List<CharactersImage> generate(GrayscaleImage grayscaleImage,
+                                          int[] targetWidths,
+                                          int targetHeight,
+                                          int flags) {
+        final AnsiColorWriter.Mode colorMode = colorMode(flags);
+        if (colorMode != null && !grayscaleImage.hasColors())
+            throw new IllegalArgumentException("grayscale image does not keep colors");
+        final boolean parallel = (flags & PARALLEL) != 0;
+        final boolean transform = (flags & (NORMALIZE | INVERT)) != 0;
+        final boolean lazy = isLazy(grayscaleImage, flags);
+        final MinMax minMax = (flags & NORMALIZE) != 0 ? grayscaleImage.getMinMax(parallel) : null;
+        final int levelFlags = flags & ~(NORMALIZE | INVERT | LAZY_TRANSFORM);
+        final int columns = columns(flags), rows = rows(flags);
+
+        final List<GrayscaleImage> levels = new ArrayList<>();
+        levels.add(grayscaleImage);
+        // full resolution transformed pixels, copied if needed
+        GrayscaleImage transformed = null;
+        final List<CharactersImage> res = new ArrayList<>(targetWidths.length);
+        for (int targetWidth : targetWidths) {
+            final CharactersLayout layout = layout(grayscaleImage.getWidth(), grayscaleImage.getHeight(),
+                    targetWidth, targetHeight);
+            int level = 0;
+            while (true) {
+                final GrayscaleImage image = levels.get(level);
+                if ((image.getWidth() + 1) / 2 < layout.getWidth() * columns * PYRAMID_MIN_STEP
+                        || (image.getHeight() + 1) / 2 < layout.getHeight() * rows * PYRAMID_MIN_STEP)
+                    break;
+                if (level + 1 == levels.size()) {
+                    final GrayscaleImage reduced = image.halve(parallel);
+                    // the first reduction is transformed, the next ones are reduced from it
+                    if (level == 0 && transform)
+                        transform(reduced, flags, minMax, parallel);
+                    levels.add(reduced);
+                }
+                level++;
+            }
+            GrayscaleImage image = levels.get(level);
+            int sampleFlags = levelFlags;
+            if (level == 0 && lazy) {
+                sampleFlags = flags;
+            } else if (level == 0 && transform) {
+                if (transformed == null)
+                    transformed = transform(grayscaleImage.copy(parallel), flags, minMax, parallel);
+                image = transformed;
+            }
+            final char[][] chars = new char[layout.getHeight()][layout.getWidth()];
+            final int[][] colors = colorMode != null ? new int[layout.getHeight()][layout.getWidth()] : null;
+            sample(image, layout, sampleFlags, chars, colors, null);
+            res.add(new CharactersImage(chars, colors, colorMode, layout.getMargin()));
+        }
+        return res;
+    }
+
+    /**
+     * Apply normalize with minMax and invert to the image pixels
+     */
+    private static GrayscaleImage transform(GrayscaleImage image, int flags, MinMax minMax, boolean parallel) {
+        if ((flags & NORMALIZE) != 0)
+            image.normalize(minMax, parallel);
+        if ((flags & INVERT) != 0)
+            image.invert(parallel);
+        return image;
+    }
+
+    /**
+     * Generate into a caller provided buffer, that can be reused for images of the same size.
+     *
+     * @param chars at least {@link CharactersLayout#getHeight()} rows of at least {@link CharactersLayout#getWidth()}
+     *              characters
+     * @return the layout of the characters written to chars
+     */
+    public CharactersLayout generate(GrayscaleImage grayscaleImage,
+                                     int targetWidth,
+                                     int targetHeight,
+                                     int flags,
+                                     char[][] chars) {
+        return generate(grayscaleImage, targetWidth, targetHeight, flags, chars, null);
+    }
+
+    /**
+     * @param colors receive the characters colors if the flags select a color mode, same size than chars
+     */
+    public CharactersLayout generate(GrayscaleImage grayscaleImage,
+                                     int targetWidth,
+                                     int targetHeight,
+                                     int flags,
+                                     char[][] chars,
+                                     int[][] colors) {
+        return generate(grayscaleImage, targetWidth, targetHeight, flags, null, chars, colors);
+    }
+
+    /**
+     * Generate into the context characters and colors rows, see {@link GenerationContext#getCharacters()}. Once the
+     * context buffers are large enough, the grayscale conversion and sampling do not allocate them again.
+     *
+     * @return the layout of the characters written to the context
+     */
+    public CharactersLayout generate(BufferedImage image,
+                                     int targetWidth,
+                                     int targetHeight,
+                                     int flags,
+                                     GenerationContext context) {
+        final CharactersLayout layout = context.layout(this, image.getWidth(), image.getHeight(), targetWidth,
+                targetHeight);
+        return generate(image, targetWidth, targetHeight, flags, context, context.characters(layout),
+                colorMode(flags) != null ? context.colors(layout) : null);
+    }
+
+    /**
+     * Generate into caller provided buffers, using the context for the grayscale image and sampling buffers.
+     *
+     * @see #generate(GrayscaleImage, int, int, int, char[][], int[][])
+     */
+    public CharactersLayout generate(BufferedImage image,
+                                     int targetWidth,
+                                     int targetHeight,
+                                     int flags,
+                                     GenerationContext context,
+                                     char[][] chars,
+                                     int[][] colors) {
+        final GrayscaleImage grayscaleImage = context.read(image, colorMode(flags) != null,
+                (flags & PARALLEL) != 0);
+        return generate(grayscaleImage, targetWidth, targetHeight, flags, context, chars, colors);
+    }
+
+    /**
+     * @param context sampling buffers, or null to allocate them. The context also keeps the sampling state of the
+     *                last image and layout, reused by the next generate of the same image, such as video frames.
+     * @see #generate(GrayscaleImage, int, int, int, char[][], int[][])
+     */
+    public CharactersLayout generate(GrayscaleImage grayscaleImage,
+                                     int targetWidth,
+                                     int targetHeight,
+                                     int flags,
+                                     GenerationContext context,
+                                     char[][] chars,
+                                     int[][] colors) {
+        final CharactersLayout layout = context != null
+                ? context.layout(this, grayscaleImage.getWidth(), grayscaleImage.getHeight(), targetWidth, targetHeight)
+                : layout(grayscaleImage.getWidth(), grayscaleImage.getHeight(), targetWidth, targetHeight);
+        if (isSmaller(chars.length, chars.length > 0 ? chars[0].length : 0, layout)
+                || (colors != null && isSmaller(colors.length, colors.length > 0 ? colors[0].length : 0, layout)))
+            throw new IllegalArgumentException("buffer is smaller than " + layout.getWidth() + "x"
+                    + layout.getHeight());
+        if (colorMode(flags) == null)
+            colors = null;
+        else if (colors == null)
+            throw new IllegalArgumentException("colors buffer is required with a color mode");
+        sample(grayscaleImage, layout, flags, chars, colors, context);
+        return layout;
+    }
+
+    private static boolean isSmaller(int rows, int columns, CharactersLayout layout) {
+        return rows < layout.getHeight() || (layout.getHeight() > 0 && columns < layout.getWidth());
+    }
+
+    /**
+     * Stream the generated rows to a writer, one row at a time, without creating the characters image.
+     */
+    public void generate(GrayscaleImage grayscaleImage,
+                         int targetWidth,
+                         int targetHeight,
+                         int flags,
+                         CharactersWriter writer) throws IOException {
+        final CharactersLayout layout = layout(grayscaleImage.getWidth(), grayscaleImage.getHeight(),
+                targetWidth, targetHeight);
+        final char[] row = new char[layout.getWidth()];
+        final AnsiColorWriter.Mode colorMode = colorMode(flags);
+        final Sampler sampler = prepare(grayscaleImage, layout, flags, null);
+        final float[] averages = sampler.newAverages();
+        // rows are written as sampled
+        final StageEvent event = StageEvent.start(Stage.SAMPLE);
+        if (colorMode == null) {
+            for (int y = 0; y < layout.getHeight(); y++) {
+                sampler.sample(y, row, null, averages);
+                writer.writeRow(row, layout.getMargin());
+            }
+        } else {
+            final int[] colorRow = new int[layout.getWidth()];
+            final AnsiColorWriter colorWriter = new AnsiColorWriter(writer, colorMode);
+            for (int y = 0; y < layout.getHeight(); y++) {
+                sampler.sample(y, row, colorRow, averages);
+                colorWriter.writeRow(row, colorRow, 0, row.length, layout.getMargin());
+            }
+            colorWriter.reset();
+        }
+        event.end((long) grayscaleImage.getWidth() * grayscaleImage.getHeight(), 0);
+    }
+
+    private void sample(GrayscaleImage grayscaleImage,
+                        CharactersLayout layout,
+                        int flags,
+                        char[][] chars,
+                        int[][] colors,
+                        GenerationContext context) {
+        final Sampler sampler = prepare(grayscaleImage, layout, flags, context);
+        final StageEvent event = StageEvent.start(Stage.SAMPLE);
+        if (sampler.parallelRows) {
+            ParallelRows.forEach(true, layout.getHeight(), layout.getWidth(), (fromRow, toRow) -> {
+                final float[] averages = sampler.newAverages();
+                for (int y = fromRow; y < toRow; y++) {
+                    sampler.sample(y, chars[y], colors != null ? colors[y] : null, averages);
+                }
+            });
+        } else {
+            final float[] averages = context != null ? context.averages(sampler.columns * sampler.rows)
+                    : sampler.newAverages();
+            for (int y = 0; y < layout.getHeight(); y++) {
+                sampler.sample(y, chars[y], colors != null ? colors[y] : null, averages);
+            }
+        }
+        event.end((long) grayscaleImage.getWidth() * grayscaleImage.getHeight(), 0);
+    }
+
+    private Sampler prepare(GrayscaleImage grayscaleImage, CharactersLayout layout, int flags,
+                            GenerationContext context) {
+        if (colorMode(flags) != null && !grayscaleImage.hasColors())
+            throw new IllegalArgumentException("grayscale image does not keep colors");
+        Sampler sampler = context != null ? context.sampler() : null;
+        if (sampler == null || !sampler.matches(this, grayscaleImage, layout, flags)) {
+            sampler = new Sampler(grayscaleImage, layout, flags, context);
+            if (context != null)
+                context.sampler(sampler);
+        }
+        sampler.prepare(context);
+        return sampler;
+    }
+
+    /**
+     * Sample the grayscale image average of each character box, or the columns x rows grid of sub boxes averages in
+     * sub cell or shape mode, then select the character from the averages.<br/>
+     * A sampler is created for an image, layout and flags, then {@link #prepare(GenerationContext)} before each
+     * sampling of the image pixels.
+     */
+    final class Sampler {
+        private final GrayscaleImage grayscaleImage;
+        private final int imageWidth;
+        private final int imageHeight;
+        private final CharactersLayout layout;
+        private final int flags;
+        private final int width;
+        private final float stepx;
+        private final float stepy;
+        /**
+         * sub boxes grid of a character
+         */
+        private final int columns;
+        private final int rows;
+        /**
+         * [y * width * columns + x] area average resampled sub boxes, null to average the boxes
+         */
+        private final float[] resampled;
+        private final boolean parallel;
+        /**
+         * rows can be sampled in parallel, not with error diffusion
+         */
+        private final boolean parallelRows;
+
+        private final SubCellMode subCellMode;
+        private final GlyphIndex glyphIndex;
+        private final boolean edges;
+        /**
+         * dithering of the ramp mode, null if none
+         */
+        private final Dithering dithering;
+        /**
+         * rolling rows of diffused errors, null if not diffusing
+         */
+        private final float[] errors;
+
+        /**
+         * Transform of the current pixels, set by prepare
+         */
+        private CharacterRamp ramp;
+        private float threshold;
+        /**
+         * sub cells are set below the threshold, above with a lazy invert
+         */
+        private boolean below;
+        /**
+         * the pixels are transformed lazily: boxes are averaged in double then transformed as
+         * (average - offset) * scale, by identity if the ramp or sub cells threshold is remapped instead
+         */
+        private boolean lazy;
+        private double offset;
+        private double scale;
+
+        private Sampler(GrayscaleImage grayscaleImage, CharactersLayout layout, int flags, GenerationContext context) {
+            this.grayscaleImage = grayscaleImage;
+            this.imageWidth = grayscaleImage.getWidth();
+            this.imageHeight = grayscaleImage.getHeight();
+            this.layout = layout;
+            this.flags = flags;
+            this.width = layout.getWidth();
+            this.parallel = (flags & PARALLEL) != 0;
+            subCellMode = subCellMode(flags);
+            glyphIndex = subCellMode == null && (flags & SHAPE) != 0 ? characterRamp.getGlyphIndex() : null;
+            edges = subCellMode == null && glyphIndex == null && (flags & EDGES) != 0;
+            dithering = subCellMode == null && glyphIndex == null && !edges ? Dithering.of(flags) : null;
+            if (dithering != null && dithering.isDiffusion()) {
+                final int length = dithering.errorsLength(width);
+                errors = context != null ? context.errors(length) : new float[length];
+                parallelRows = false;
+            } else {
+                errors = null;
+                parallelRows = parallel;
+            }
+
+            columns = columns(flags);
+            rows = rows(flags);
+            final float stepx = imageWidth / (float) layout.getWidth();
+            final float stepy = imageHeight / (float) layout.getHeight();
+            if ((flags & AREA_AVERAGE) != 0) {
+                final int length = layout.getWidth() * columns * layout.getHeight() * rows;
+                resampled = context != null ? context.resampled(length) : new float[length];
+                this.stepx = stepx;
+                this.stepy = stepy;
+            } else {
+                resampled = null;
+                // averaged boxes are at least a pixel
+                this.stepx = Math.max(1, stepx);
+                this.stepy = Math.max(1, stepy);
+            }
+        }
+
+        /**
+         * @return true if this sampler was created for this generator, image, layout and flags
+         */
+        private boolean matches(AsciiArtGenerator generator, GrayscaleImage grayscaleImage, CharactersLayout layout,
+                                int flags) {
+            return generator == AsciiArtGenerator.this && grayscaleImage == this.grayscaleImage
+                    && grayscaleImage.getWidth() == imageWidth && grayscaleImage.getHeight() == imageHeight
+                    && layout == this.layout && flags == this.flags;
+        }
+
+        /**
+         * Apply normalize and invert, to the pixels or lazily to the selection, and prepare the boxes averages of the
+         * current image pixels
+         */
+        private void prepare(GenerationContext context) {
+            final boolean normalize = (flags & NORMALIZE) != 0;
+            final boolean invert = (flags & INVERT) != 0;
+            CharacterRamp ramp = characterRamp;
+            float threshold = SUB_CELL_THRESHOLD;
+            double offset = 0, scale = 1;
+            final boolean lazy = isLazy(grayscaleImage, flags);
+            if (lazy) {
+                float min = 0, range = 1;
+                if (normalize) {
+                    final MinMax minMax = grayscaleImage.getMinMax(parallel);
+                    min = minMax.getMin();
+                    range = minMax.getMax() - min;
+                }
+                if (subCellMode != null) {
+                    threshold = min + (invert ? 1 - SUB_CELL_THRESHOLD : SUB_CELL_THRESHOLD) * range;
+                } else if (glyphIndex != null || dithering != null || edges) {
+                    // these modes compare the averages with each other, or need the ramp luminances
+                    offset = invert ? (double) min + range : min;
+                    scale = invert ? -1.0 / range : 1.0 / range;
+                } else {
+                    ramp = context != null ? context.transform(characterRamp, min, range, invert)
+                            : characterRamp.transform(min, range, invert);
+                }
+            }
+            if (!lazy) {
+                if (normalize)
+                    grayscaleImage.normalize(parallel);
+                if (invert)
+                    grayscaleImage.invert(parallel);
+            }
+            this.ramp = ramp;
+            this.threshold = threshold;
+            this.below = !(lazy && invert);
+            this.lazy = lazy;
+            this.offset = offset;
+            this.scale = scale;
+            if (errors != null)
+                Arrays.fill(errors, 0, dithering.errorsLength(width), 0);
+            if (resampled != null) {
+                if (width > 0 && layout.getHeight() > 0)
+                    resample();
+            } else if ((flags & SUMMED_AREA_TABLE) != 0 && !grayscaleImage.hasSummedAreaTable()) {
+                grayscaleImage.computeSummedAreaTable(parallel);
+            }
+        }
+
+        /**
+         * @return a scratch array of the averages of a character
+         */
+        private float[] newAverages() {
+            return new float[columns * rows];
+        }
+
+        /**
+         * @param colorRow receive the characters colors, if not null
+         * @param averages scratch array of at least columns * rows averages
+         */
+        private void sample(int y, char[] row, int[] colorRow, float[] averages) {
+            if (errors != null)
+                dithering.startRow(errors, width, y);
+            float yoffset = y * stepy;
+            for (int x = 0; x < width; x++) {
+                float xoffset = x * stepx;
+                averages(x, y, xoffset, yoffset, averages);
+                row[x] = dithering != null ? dither(x, y, averages[0]) : select(averages);
+                if (colorRow != null) {
+                    final int minx = (int) xoffset, miny = (int) yoffset;
+                    colorRow[x] = quantize(grayscaleImage.averageColor(minx, miny,
+                            Math.max(minx + 1, (int) (xoffset + stepx)), Math.max(miny + 1, (int) (yoffset + stepy))));
+                }
+            }
+        }
+
+        private void averages(int x, int y, float xoffset, float yoffset, float[] averages) {
+            if (resampled != null) {
+                final int resampledWidth = width * columns;
+                final int offset = y * rows * resampledWidth + x * columns;
+                for (int sy = 0; sy < rows; sy++) {
+                    System.arraycopy(resampled, offset + sy * resampledWidth, averages, sy * columns, columns);
+                }
+            } else if (columns == 1 && rows == 1) {
+                final int minx = (int) xoffset, miny = (int) yoffset;
+                final int maxx = (int) (xoffset + stepx), maxy = (int) (yoffset + stepy);
+                averages[0] = lazy ? grayscaleImage.average(minx, miny, maxx, maxy, offset, scale)
+                        : grayscaleImage.average(minx, miny, maxx, maxy);
+            } else if (lazy) {
+                grayscaleImage.averageGrid(xoffset, yoffset, stepx, stepy, columns, rows, averages, offset, scale);
+            } else {
+                grayscaleImage.averageGrid(xoffset, yoffset, stepx, stepy, columns, rows, averages, 0);
+            }
+        }
+
+        private void resample() {
+            final int resampledWidth = width * columns, resampledHeight = layout.getHeight() * rows;
+            if (lazy)
+                grayscaleImage.resample(resampledWidth, resampledHeight, resampled, parallel, offset, scale);
+            else
+                grayscaleImage.resample(resampledWidth, resampledHeight, resampled, parallel);
+        }
+
+        private char select(float[] averages) {
+            final int count = columns * rows;
+            if (subCellMode != null) {
+                int mask = 0;
+                for (int i = 0; i < count; i++) {
+                    final float average = averages[i];
+                    if (below ? average < threshold : average > threshold)
+                        mask |= 1 << i;
+                }
+                return subCellMode.get(mask);
+            }
+            if (glyphIndex != null)
+                return glyphIndex.get(averages);
+            if (edges)
+                return edge(averages);
+            return ramp.get(averages[0]);
+        }
+
+        private char dither(int x, int y, float average) {
+            if (errors == null)
+                return ramp.getSymbol(ramp.dither(average, Dithering.threshold(x, y)));
+            final float diffused = average + dithering.error(errors, width, x, y);
+            final int index = ramp.dither(diffused, 0.5f);
+            if (!Float.isNaN(diffused))
+                dithering.diffuse(errors, width, x, y, diffused - ramp.getLuminence(index));
+            return ramp.getSymbol(index);
+        }
+
+        /**
+         * @param averages the 3x3 sub boxes averages
+         * @return the edge glyph of the sobel gradient of the averages, or the ramp symbol of their average if the
+         * gradient is weak
+         */
+        private char edge(float[] averages) {
+            final float top = averages[0] + 2 * averages[1] + averages[2];
+            final float bottom = averages[6] + 2 * averages[7] + averages[8];
+            final float gx = averages[2] + 2 * averages[5] + averages[8] - averages[0] - 2 * averages[3] - averages[6];
+            final float gy = bottom - top;
+            if (gx * gx + gy * gy < EDGE_MAGNITUDE * EDGE_MAGNITUDE) {
+                float sum = 0;
+                for (int i = 0; i < EDGE_GRID * EDGE_GRID; i++) {
+                    sum += averages[i];
+                }
+                return ramp.get(sum / (EDGE_GRID * EDGE_GRID));
+            }
+            final float ax = Math.abs(gx), ay = Math.abs(gy);
+            if (ay <= ax * EDGE_AXIS_SLOPE)
+                return '|';
+            if (ax <= ay * EDGE_AXIS_SLOPE) {
+                // underscore when the step is clearly between the middle and bottom rows: the steps of an even
+                // ramp across the rows are equal up to rounding
+                final float middle = averages[3] + 2 * averages[4] + averages[5];
+                return Math.abs(bottom - middle) - Math.abs(middle - top) > EDGE_TIE * ay ? '_' : '-';
+            }
+            // y axis downward: a gradient toward the bottom right crosses a / edge
+            return (gx > 0) == (gy > 0) ? '/' : '\\';
+        }
+    }
+
+    /**
+     * @return true if sampling with these flags applies normalize and invert lazily, leaving the pixels unchanged
+     */
+    private static boolean isLazy(GrayscaleImage grayscaleImage, int flags) {
+        if ((flags & LAZY_TRANSFORM) == 0 || (flags & (NORMALIZE | INVERT)) == 0)
+            return false;
+        // error diffusion would propagate the rounding differences of the lazy transform to the next characters
+        final Dithering dithering = Dithering.of(flags);
+        if (dithering != null && dithering.isDiffusion() && subCellMode(flags) == null
+                && (flags & (SHAPE | EDGES)) == 0)
+            return false;
+        if ((flags & NORMALIZE) == 0)
+            return true;
+        // an empty image range can not be remapped, transform the pixels
+        final MinMax minMax = grayscaleImage.getMinMax((flags & PARALLEL) != 0);
+        final float range = minMax.getMax() - minMax.getMin();
+        return range > 0 && !Float.isInfinite(1 / range);
+    }
+
+    /**
+     * @return the number of sub boxes per character along x
+     */
+    static int columns(int flags) {
+        final SubCellMode subCellMode = subCellMode(flags);
+        if (subCellMode != null)
+            return subCellMode.getColumns();
+        if ((flags & SHAPE) != 0)
+            return GlyphIndex.GRID;
+        return (flags & EDGES) != 0 ? EDGE_GRID : 1;
+    }
+
+    /**
+     * @return the number of sub boxes per character along y
+     */
+    static int rows(int flags) {
+        final SubCellMode subCellMode = subCellMode(flags);
+        if (subCellMode != null)
+            return subCellMode.getRows();
+        if ((flags & SHAPE) != 0)
+            return GlyphIndex.GRID;
+        return (flags & EDGES) != 0 ? EDGE_GRID : 1;
+    }
+
+    private int quantize(int color) {
+        if (colorBits == 8)
+            return color;
+        final int levels = (1 << colorBits) - 1;
+        int res = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            final int level = (((color >> shift) & 0xFF) * levels + 127) / 255;
+            res |= ((level * 255 + levels / 2) / levels) << shift;
+        }
+        return res;
+    }
+
+    /**
+     * Compute the characters image size for an image, respecting the image and characters aspect ratio.
+     */
+    public CharactersLayout layout(int imageWidth,
+                                   int imageHeight,
+                                   int targetWidth,
+                                   int targetHeight) {
         if (targetWidth == 0 || targetHeight == 0)
             throw new IllegalArgumentException("maxWidth or maxHeight can not be 0");
 
         if (targetWidth < 0 && targetHeight < 0)
-            targetWidth = image.getWidth();
+            targetWidth = imageWidth;
 
-        final float charAspectRatio = new CharacterBounds(' ').getAspectRatio();
-        final float imageAspectRatio = image.getWidth() / (float) image.getHeight();
+        final float charAspectRatio = characterRamp.getCharAspectRatio();
+        final float imageAspectRatio = imageWidth / (float) imageHeight;
         final float aspectRatio = charAspectRatio * imageAspectRatio;
 
         int width, height, margin = 0;
@@ -52,27 +801,6 @@ public class AsciiArtGenerator {
                 margin = (targetWidth - width) / 2;
             }
         }
-
-        char[][] chars = new char[height][width];
-        float stepx = Math.max(1, image.getWidth() / (float) width);
-        float stepy = Math.max(1, image.getHeight() / (float) height);
-
-        GrayscaleImage grayscaleImage = GrayscaleImage.from(image);
-        if ((flags & NORMALIZE) != 0)
-            grayscaleImage.normalize();
-        if ((flags & INVERT) != 0)
-            grayscaleImage.invert();
-
-        for (int y = 0; y < height; y++) {
-            float yoffset = y * stepy;
-            float maxy = yoffset + stepy;
-            for (int x = 0; x < width; x++) {
-                float xoffset = x * stepx;
-                float maxx = xoffset + stepx;
-                final float average = grayscaleImage.average((int) xoffset, (int) yoffset, (int) maxx, (int) maxy);
-                chars[y][x] = characterRamp.get(average);
-            }
-        }
-        return new CharactersImage(chars, margin);
+        return new CharactersLayout(width, height, margin);
     }
 }
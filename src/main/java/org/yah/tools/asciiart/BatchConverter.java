@@ -0,0 +1,375 @@
+package org.yah.tools.asciiart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Convert a batch of image files using a 3 stages pipeline: decode, convert and write.<br/>
+ * Each stage has its own workers, stages are connected by bounded queues so that a slow stage blocks the previous
+ * one instead of piling up decoded images in memory.<br/>
+ * A failing file is reported and skipped, it does not abort the batch. A failing worker, such as an
+ * {@link OutOfMemoryError}, stops all the workers and fails the run.
+ */
+public class BatchConverter {
+
+    public static final class Job {
+        private final File input;
+        private final List<File> outputs;
+
+        public Job(File input, File output) {
+            this(input, Collections.singletonList(Objects.requireNonNull(output, "output is null")));
+        }
+
+        /**
+         * @param outputs one output file per characters image converted from the input, in the converter order
+         */
+        public Job(File input, List<File> outputs) {
+            this.input = Objects.requireNonNull(input, "input is null");
+            if (outputs.isEmpty())
+                throw new IllegalArgumentException("no output");
+            this.outputs = Collections.unmodifiableList(new ArrayList<>(outputs));
+        }
+
+        public File getInput() {
+            return input;
+        }
+
+        /**
+         * @return the first output
+         */
+        public File getOutput() {
+            return outputs.get(0);
+        }
+
+        public List<File> getOutputs() {
+            return outputs;
+        }
+    }
+
+    /**
+     * Decode an image file to grayscale
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        GrayscaleImage decode(File input) throws IOException;
+    }
+
+    /**
+     * Convert a decoded image to several characters images, such as several sizes
+     */
+    @FunctionalInterface
+    public interface MultiConverter {
+        List<CharactersImage> convert(GrayscaleImage image);
+    }
+
+    /**
+     * Batch writing several characters images per input to the jobs outputs
+     *
+     * @param converter convert a decoded image to one characters image per job output, must be thread safe
+     * @see #BatchConverter(Decoder, Function, String, int, int)
+     */
+    public static BatchConverter multiple(Decoder decoder,
+                                          MultiConverter converter,
+                                          String lineSeparator,
+                                          int threads,
+                                          int queueSize) {
+        return new BatchConverter(decoder, Objects.requireNonNull(converter, "converter is null"), lineSeparator,
+                threads, queueSize);
+    }
+
+    private final Decoder decoder;
+    private final MultiConverter converter;
+    private final String lineSeparator;
+    private final int decoders;
+    private final int converters;
+    private final int writers;
+    private final int queueSize;
+
+    /**
+     * @param decoder       decode an image file, must be thread safe
+     * @param converter     convert a decoded image, must be thread safe
+     * @param lineSeparator output line separator
+     * @param threads       number of decode and convert workers, split between the two stages
+     * @param queueSize     capacity of the queues between stages
+     */
+    public BatchConverter(Decoder decoder,
+                          Function<GrayscaleImage, CharactersImage> converter,
+                          String lineSeparator,
+                          int threads,
+                          int queueSize) {
+        this(decoder, singleConverter(Objects.requireNonNull(converter, "converter is null")), lineSeparator,
+                threads, queueSize);
+    }
+
+    private BatchConverter(Decoder decoder,
+                           MultiConverter converter,
+                           String lineSeparator,
+                           int threads,
+                           int queueSize) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Invalid threads " + threads);
+        if (queueSize <= 0)
+            throw new IllegalArgumentException("Invalid queue size " + queueSize);
+        this.decoder = Objects.requireNonNull(decoder, "decoder is null");
+        this.converter = converter;
+        this.lineSeparator = Objects.requireNonNull(lineSeparator, "lineSeparator is null");
+        this.decoders = (threads + 1) / 2;
+        this.converters = Math.max(1, threads - decoders);
+        this.writers = Math.max(1, threads / 4);
+        this.queueSize = queueSize;
+    }
+
+    private static MultiConverter singleConverter(Function<GrayscaleImage, CharactersImage> converter) {
+        return image -> Collections.singletonList(converter.apply(image));
+    }
+
+    /**
+     * Run the batch, waiting for all jobs completion.
+     *
+     * @param errors where failures are reported, as they occur
+     */
+    public Report run(List<Job> jobs, PrintStream errors) throws InterruptedException {
+        return run(jobs, errors, job -> {
+        });
+    }
+
+    /**
+     * Run the batch, waiting for all jobs completion.
+     *
+     * @param errors    where failures are reported, as they occur
+     * @param succeeded called with each job whose outputs are all written, from the writer threads. A job whose
+     *                  callback throws is reported as failed.
+     * @throws IllegalStateException if a worker failed, the other workers are stopped
+     */
+    public Report run(List<Job> jobs, PrintStream errors, Consumer<Job> succeeded) throws InterruptedException {
+        Objects.requireNonNull(succeeded, "succeeded is null");
+        final Report report = new Report(jobs.size());
+        final BlockingQueue<Decoded> decodedQueue = new ArrayBlockingQueue<>(queueSize);
+        final BlockingQueue<Converted> convertedQueue = new ArrayBlockingQueue<>(queueSize);
+        final AtomicInteger nextJob = new AtomicInteger();
+        // the last worker of a stage ends the next stage
+        final AtomicInteger runningDecoders = new AtomicInteger(decoders);
+        final AtomicInteger runningConverters = new AtomicInteger(converters);
+
+        final ExecutorService decodeService = Executors.newFixedThreadPool(decoders, threadFactory("decode"));
+        final ExecutorService convertService = Executors.newFixedThreadPool(converters, threadFactory("convert"));
+        final ExecutorService writeService = Executors.newFixedThreadPool(writers, threadFactory("write"));
+        // workers of all stages complete in this queue, the first failure is seen whatever its stage
+        final BlockingQueue<Future<Void>> completed = new LinkedBlockingQueue<>();
+        try {
+            final CompletionService<Void> decodeTasks = new ExecutorCompletionService<>(decodeService, completed);
+            for (int i = 0; i < decoders; i++) {
+                decodeTasks.submit(() -> {
+                    decode(jobs, nextJob, decodedQueue, report, errors);
+                    if (runningDecoders.decrementAndGet() == 0) {
+                        for (int c = 0; c < converters; c++) {
+                            decodedQueue.put(Decoded.END);
+                        }
+                    }
+                    return null;
+                });
+            }
+            final CompletionService<Void> convertTasks = new ExecutorCompletionService<>(convertService, completed);
+            for (int i = 0; i < converters; i++) {
+                convertTasks.submit(() -> {
+                    convert(decodedQueue, convertedQueue, report, errors);
+                    if (runningConverters.decrementAndGet() == 0) {
+                        for (int w = 0; w < writers; w++) {
+                            convertedQueue.put(Converted.END);
+                        }
+                    }
+                    return null;
+                });
+            }
+            final CompletionService<Void> writeTasks = new ExecutorCompletionService<>(writeService, completed);
+            for (int i = 0; i < writers; i++) {
+                writeTasks.submit(() -> {
+                    write(convertedQueue, report, errors, succeeded);
+                    return null;
+                });
+            }
+            await(completed, decoders + converters + writers);
+        } finally {
+            // interrupt the workers blocked on a queue of a failed stage
+            decodeService.shutdownNow();
+            convertService.shutdownNow();
+            writeService.shutdownNow();
+        }
+        report.complete();
+        return report;
+    }
+
+    private void decode(List<Job> jobs, AtomicInteger nextJob, BlockingQueue<Decoded> decodedQueue,
+                        Report report, PrintStream errors) throws InterruptedException {
+        int index;
+        while ((index = nextJob.getAndIncrement()) < jobs.size()) {
+            final Job job = jobs.get(index);
+            final GrayscaleImage image;
+            try {
+                image = decoder.decode(job.input);
+            } catch (IOException | RuntimeException e) {
+                report.failed(errors, "Error reading image " + job.input + ": " + e.getMessage());
+                continue;
+            }
+            decodedQueue.put(new Decoded(job, image));
+        }
+    }
+
+    private void convert(BlockingQueue<Decoded> decodedQueue, BlockingQueue<Converted> convertedQueue,
+                         Report report, PrintStream errors) throws InterruptedException {
+        Decoded decoded;
+        while ((decoded = decodedQueue.take()) != Decoded.END) {
+            final List<CharactersImage> charactersImages;
+            try {
+                charactersImages = converter.convert(decoded.image);
+                if (charactersImages.size() != decoded.job.outputs.size())
+                    throw new IllegalStateException(charactersImages.size() + " images converted for "
+                            + decoded.job.outputs.size() + " outputs");
+            } catch (RuntimeException e) {
+                report.failed(errors, "Error converting image " + decoded.job.input + ": " + e);
+                continue;
+            }
+            report.pixels.addAndGet((long) decoded.image.getWidth() * decoded.image.getHeight());
+            convertedQueue.put(new Converted(decoded.job, charactersImages));
+        }
+    }
+
+    private void write(BlockingQueue<Converted> convertedQueue, Report report, PrintStream errors,
+                       Consumer<Job> succeeded) throws InterruptedException {
+        Converted converted;
+        while ((converted = convertedQueue.take()) != Converted.END) {
+            final List<File> outputs = converted.job.outputs;
+            boolean written = true;
+            for (int i = 0; i < outputs.size(); i++) {
+                final File output = outputs.get(i);
+                try {
+                    converted.charactersImages.get(i).toFile(lineSeparator, output);
+                } catch (IOException | RuntimeException e) {
+                    report.failed(errors, "Error writing output " + output + ": " + e.getMessage());
+                    written = false;
+                    break;
+                }
+                report.bytes.addAndGet(output.length());
+            }
+            if (!written)
+                continue;
+            try {
+                succeeded.accept(converted.job);
+            } catch (RuntimeException e) {
+                report.failed(errors, "Error completing " + converted.job.input + ": " + e);
+                continue;
+            }
+            report.succeeded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Wait for the completion of count workers
+     *
+     * @throws IllegalStateException on the first failed worker
+     */
+    private static void await(BlockingQueue<Future<Void>> completed, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            try {
+                completed.take().get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch worker failed: " + e.getCause(), e.getCause());
+            }
+        }
+    }
+
+    private static ThreadFactory threadFactory(String stage) {
+        final AtomicInteger count = new AtomicInteger();
+        return r -> {
+            final Thread thread = new Thread(r, "ascii-art-" + stage + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Decoded {
+        private static final Decoded END = new Decoded(null, null);
+        private final Job job;
+        private final GrayscaleImage image;
+
+        private Decoded(Job job, GrayscaleImage image) {
+            this.job = job;
+            this.image = image;
+        }
+    }
+
+    private static final class Converted {
+        private static final Converted END = new Converted(null, null);
+        private final Job job;
+        private final List<CharactersImage> charactersImages;
+
+        private Converted(Job job, List<CharactersImage> charactersImages) {
+            this.job = job;
+            this.charactersImages = charactersImages;
+        }
+    }
+
+    public static final class Report {
+        private final int files;
+        private final long startTime = System.nanoTime();
+        private long elapsed;
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicLong pixels = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        private Report(int files) {
+            this.files = files;
+        }
+
+        private void failed(PrintStream errors, String message) {
+            failed.incrementAndGet();
+            synchronized (errors) {
+                errors.println(message);
+            }
+        }
+
+        private void complete() {
+            elapsed = System.nanoTime() - startTime;
+        }
+
+        public int getSucceeded() {
+            return succeeded.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public long getPixels() {
+            return pixels.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getElapsedNanos() {
+            return elapsed;
+        }
+
+        public void print(PrintStream out) {
+            final double seconds = elapsed / 1E9;
+            out.printf("Converted %d/%d files (%d failed) in %.2fs: %.1f files/s, %.1f Mpixels/s, %.1f KB written%n",
+                    getSucceeded(), files, getFailed(), seconds,
+                    getSucceeded() / seconds,
+                    getPixels() / 1E6 / seconds,
+                    getBytes() / 1024.0);
+        }
+    }
+}
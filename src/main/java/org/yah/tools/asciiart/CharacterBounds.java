@@ -4,18 +4,35 @@ import java.awt.*;
 import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 class CharacterBounds {
+
+    private static final Map<Key, CharacterBounds> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cached bounds of a character, measured once per font and character
+     */
+    static CharacterBounds of(Font font, char character) {
+        return CACHE.computeIfAbsent(new Key(font, character), k -> new CharacterBounds(k.font, k.character));
+    }
+
     final int width;
     final int heigth;
     final int basline;
 
     public CharacterBounds(char character) {
+        this(CharacterRamp.FONT, character);
+    }
+
+    public CharacterBounds(Font font, char character) {
         BufferedImage img = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
         Graphics2D graphics = img.createGraphics();
         try {
             FontRenderContext fontRenderContext = graphics.getFontRenderContext();
-            final Rectangle2D bounds = CharacterRamp.FONT.getStringBounds(Character.toString(character), fontRenderContext);
+            final Rectangle2D bounds = font.getStringBounds(Character.toString(character), fontRenderContext);
             width = (int) bounds.getWidth();
             heigth = (int) bounds.getHeight();
             basline = (int) bounds.getY();
@@ -27,4 +44,27 @@ class CharacterBounds {
     float getAspectRatio() {
         return width / (float) heigth;
     }
+
+    private static final class Key {
+        private final Font font;
+        private final char character;
+
+        private Key(Font font, char character) {
+            this.font = Objects.requireNonNull(font, "font is null");
+            this.character = character;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return character == key.character && font.equals(key.font);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(font, character);
+        }
+    }
 }
@@ -2,53 +2,332 @@ package org.yah.tools.asciiart;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.*;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class CharacterRamp {
 
     public static final Font FONT = Font.decode(Font.MONOSPACED);
 
+    /**
+     * Identifies a ramp profile stream: "ARMP"
+     */
+    private static final int PROFILE_MAGIC = 0x41524D50;
+    private static final int PROFILE_VERSION = 1;
+
+    /**
+     * Ramps by font and symbols, ramps are immutable and shared between all generators
+     */
+    private static final Map<RampKey, CharacterRamp> CACHE = new ConcurrentHashMap<>();
+
     public static CharacterRamp create(String symbols) {
-        return new CharacterRamp(sort(symbols));
+        return create(FONT, symbols);
+    }
+
+    /**
+     * @return the cached ramp for this font and symbols, rasterizing the symbols only on the first call
+     */
+    public static CharacterRamp create(Font font, String symbols) {
+        return CACHE.computeIfAbsent(new RampKey(font, symbols), key -> rasterize(key.font, key.symbols));
+    }
+
+    /**
+     * Rasterize the symbols to a new ramp, without the ramps cache: for symbols that should not be kept for the
+     * process lifetime, such as symbols received from clients.
+     */
+    public static CharacterRamp rasterize(Font font, String symbols) {
+        Objects.requireNonNull(font, "font is null");
+        Objects.requireNonNull(symbols, "symbols is null");
+        return new CharacterRamp(font, symbols, CharacterBounds.of(font, ' ').getAspectRatio(), sort(font, symbols));
+    }
+
+    /**
+     * Read a ramp written by {@link #save(OutputStream)}, without any font rendering. The loaded ramp is cached
+     * and returned by later {@link #create(Font, String)} calls with the same font and symbols.
+     */
+    public static CharacterRamp load(InputStream inputStream) throws IOException {
+        final DataInputStream dis = new DataInputStream(inputStream);
+        if (dis.readInt() != PROFILE_MAGIC)
+            throw new IOException("Not a character ramp profile");
+        final int version = dis.readInt();
+        if (version != PROFILE_VERSION)
+            throw new IOException("Unsupported character ramp profile version " + version);
+        final Font font = new Font(dis.readUTF(), dis.readInt(), dis.readInt());
+        final String symbols = dis.readUTF();
+        final float charAspectRatio = dis.readFloat();
+        final int length = dis.readInt();
+        if (length != symbols.length())
+            throw new IOException("Invalid character ramp profile length " + length);
+        final CharacterLuminescence[] characters = new CharacterLuminescence[length];
+        float previousLuminescence = 0;
+        for (int i = 0; i < length; i++) {
+            final char character = dis.readChar();
+            if (symbols.indexOf(character) < 0)
+                throw new IOException("Invalid character ramp profile character " + character);
+            // search and the lookup table expect ascending thresholds in [0, 1], NaN is rejected too
+            final float luminescence = dis.readFloat();
+            if (!(luminescence >= previousLuminescence && luminescence <= 1))
+                throw new IOException("Invalid character ramp profile threshold " + luminescence + " at " + i);
+            characters[i] = new CharacterLuminescence(character, luminescence);
+            previousLuminescence = luminescence;
+        }
+        final CharacterRamp ramp = new CharacterRamp(font, symbols, charAspectRatio, characters);
+        final CharacterRamp previous = CACHE.putIfAbsent(new RampKey(font, symbols), ramp);
+        return previous != null ? previous : ramp;
     }
 
+    /**
+     * Number of lookup table buckets over [0, 1[, a power of 2 so that bucket bounds are exact floats
+     */
+    private static final int LOOKUP_SIZE = 4096;
+
+    /**
+     * Lookup table value for buckets containing a threshold
+     */
+    private static final short AMBIGUOUS = -1;
+
     private static final String LS = System.lineSeparator();
-    private final CharacterLuminescence[] characters;
+    private final Font font;
+    private final String symbolSet;
+    private final float charAspectRatio;
+
+    /**
+     * sorted characters and their luminescence
+     */
+    private final char[] symbols;
+    private final float[] thresholds;
+
+    /**
+     * index of the character returned for NaN luminence, rewritten with the thresholds by
+     * {@link #transform(float, float, boolean, CharacterRamp)}
+     */
+    private int undefinedIndex;
+
+    /**
+     * [(int) (luminence * LOOKUP_SIZE)] index of the character, or AMBIGUOUS if the bucket contains a threshold
+     */
+    private final short[] lookup;
+
+    /**
+     * created on first use, only by the ramps created from the font
+     */
+    private volatile GlyphIndex glyphIndex;
 
-    private CharacterRamp(CharacterLuminescence[] characters) {
-        this.characters = characters;
+    private CharacterRamp(Font font, String symbolSet, float charAspectRatio, CharacterLuminescence[] characters) {
+        this(font, symbolSet, charAspectRatio, characters.length);
+        for (int i = 0; i < characters.length; i++) {
+            symbols[i] = characters[i].character;
+            thresholds[i] = characters[i].luminescence;
+        }
+        undefinedIndex = characters.length - 1;
+        fillLookup();
+    }
+
+    /**
+     * Ramp of length characters, to be filled
+     */
+    private CharacterRamp(Font font, String symbolSet, float charAspectRatio, int length) {
+        if (length > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Too many symbols " + length);
+        this.font = font;
+        this.symbolSet = symbolSet;
+        this.charAspectRatio = charAspectRatio;
+        symbols = new char[length];
+        thresholds = new float[length];
+        lookup = new short[LOOKUP_SIZE];
+    }
+
+    public Font getFont() {
+        return font;
+    }
+
+    /**
+     * @return the symbols this ramp was created from, in their original order
+     */
+    public String getSymbols() {
+        return symbolSet;
+    }
+
+    /**
+     * @return width / height of a character
+     */
+    public float getCharAspectRatio() {
+        return charAspectRatio;
+    }
+
+    /**
+     * @return the glyphs shapes index of the symbols, rasterized on the first call
+     */
+    GlyphIndex getGlyphIndex() {
+        GlyphIndex res = glyphIndex;
+        if (res == null) {
+            synchronized (this) {
+                res = glyphIndex;
+                if (res == null)
+                    glyphIndex = res = GlyphIndex.create(font, symbolSet);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Write this ramp as a compact binary profile, loaded by {@link #load(InputStream)}
+     */
+    public void save(OutputStream outputStream) throws IOException {
+        final DataOutputStream dos = new DataOutputStream(outputStream);
+        dos.writeInt(PROFILE_MAGIC);
+        dos.writeInt(PROFILE_VERSION);
+        dos.writeUTF(font.getName());
+        dos.writeInt(font.getStyle());
+        dos.writeInt(font.getSize());
+        dos.writeUTF(symbolSet);
+        dos.writeFloat(charAspectRatio);
+        dos.writeInt(symbols.length);
+        for (int i = 0; i < symbols.length; i++) {
+            dos.writeChar(symbols[i]);
+            dos.writeFloat(thresholds[i]);
+        }
+        dos.flush();
     }
 
     public char get(float luminence) {
-        for (int i = 1; i < characters.length; i++) {
-            if (characters[i].luminescence > luminence)
-                return characters[i - 1].character;
+        return symbols[indexOf(luminence)];
+    }
+
+    /**
+     * Select between the character of luminence and the next one: the next one if luminence is above threshold of
+     * the way to its luminence
+     *
+     * @param threshold in [0, 1], 0.5 for the nearest character
+     * @return the index of the selected character, see {@link #getSymbol(int)}
+     */
+    int dither(float luminence, float threshold) {
+        final int index = indexOf(luminence);
+        if (index + 1 < thresholds.length && !Float.isNaN(luminence)
+                && luminence - thresholds[index] > threshold * (thresholds[index + 1] - thresholds[index]))
+            return index + 1;
+        return index;
+    }
+
+    char getSymbol(int index) {
+        return symbols[index];
+    }
+
+    /**
+     * @return the luminence of the character at index, in the sorted characters
+     */
+    float getLuminence(int index) {
+        return thresholds[index];
+    }
+
+    private int indexOf(float luminence) {
+        if (luminence >= 0 && luminence < 1) {
+            final int index = lookup[(int) (luminence * LOOKUP_SIZE)];
+            if (index != AMBIGUOUS)
+                return index;
+        }
+        return search(luminence);
+    }
+
+    /**
+     * Exact lookup, without the lookup table
+     */
+    public char getExact(float luminence) {
+        return symbols[search(luminence)];
+    }
+
+    /**
+     * @return the index of the last character having a threshold lower or equal to luminence, ignoring the first
+     * character threshold
+     */
+    private int search(float luminence) {
+        if (Float.isNaN(luminence))
+            return undefinedIndex;
+        int low = 1, high = thresholds.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (thresholds[mid] > luminence)
+                high = mid;
+            else
+                low = mid + 1;
+        }
+        return low - 1;
+    }
+
+    /**
+     * Remap the thresholds, so that the returned ramp applied to a pixel value v selects the same character than this
+     * ramp applied to (v - min) / range, or to 1 - (v - min) / range if inverted, up to rounding.<br/>
+     * Used to normalize and invert an image without rewriting its pixels.
+     */
+    CharacterRamp transform(float min, float range, boolean invert) {
+        return transform(min, range, invert, null);
+    }
+
+    /**
+     * @param reused a ramp returned by a previous transform of this ramp, rewritten with the new thresholds instead of
+     *               creating a ramp, or null. Not safe while reused is used by another thread.
+     * @see #transform(float, float, boolean)
+     */
+    CharacterRamp transform(float min, float range, boolean invert, CharacterRamp reused) {
+        if (!(range > 0) || Float.isInfinite(range))
+            throw new IllegalArgumentException("Invalid range " + range);
+        final int length = symbols.length;
+        final CharacterRamp res = reused != null && reused.symbols.length == length ? reused
+                : new CharacterRamp(font, symbolSet, charAspectRatio, length);
+        if (invert) {
+            // 1 - (v - min) / range >= t <=> v <= min + (1 - t) * range: characters order is reversed and a pixel
+            // equal to a threshold falls in the lower character, hence the next float up
+            res.symbols[0] = symbols[length - 1];
+            res.thresholds[0] = Float.NEGATIVE_INFINITY;
+            for (int i = 1; i < length; i++) {
+                final double threshold = min + (1.0 - thresholds[length - i]) * range;
+                res.symbols[i] = symbols[length - 1 - i];
+                res.thresholds[i] = Math.nextUp((float) threshold);
+            }
+            res.undefinedIndex = length - 1 - undefinedIndex;
+        } else {
+            for (int i = 0; i < length; i++) {
+                res.symbols[i] = symbols[i];
+                res.thresholds[i] = (float) (min + (double) thresholds[i] * range);
+            }
+            res.undefinedIndex = undefinedIndex;
+        }
+        res.fillLookup();
+        return res;
+    }
+
+    private void fillLookup() {
+        for (int bucket = 0; bucket < LOOKUP_SIZE; bucket++) {
+            final int low = search(bucket / (float) LOOKUP_SIZE);
+            final int high = search(Math.nextDown((bucket + 1) / (float) LOOKUP_SIZE));
+            lookup[bucket] = low == high ? (short) low : AMBIGUOUS;
         }
-        return characters[characters.length - 1].character;
     }
 
     @Override
     public String toString() {
-        return Arrays.stream(characters)
-                .map(c -> Character.toString(c.character))
-                .collect(Collectors.joining());
+        return new String(symbols);
     }
 
     public String toDetailedString() {
-        return Arrays.stream(characters)
-                .map(c -> c.character + " : " + c.luminescence + LS)
+        return IntStream.range(0, symbols.length)
+                .mapToObj(i -> symbols[i] + " : " + thresholds[i] + LS)
                 .collect(Collectors.joining());
     }
 
-    private static CharacterLuminescence[] sort(String symbols) {
+    private static CharacterLuminescence[] sort(Font font, String symbols) {
         final int length = symbols.length();
         if (length == 0)
             throw new IllegalArgumentException("need symbols");
 
-        CharacterBounds bounds = new CharacterBounds(symbols.charAt(0));
+        CharacterBounds bounds = CharacterBounds.of(font, symbols.charAt(0));
 
-        GrayscaleImage characterImage = createImage(symbols, bounds);
+        GrayscaleImage characterImage = createImage(font, symbols, bounds);
         CharacterLuminescence[] characterLuminescences = new CharacterLuminescence[length];
         int xOffset = 0;
         MinMax.Builder minMaxBuilder = MinMax.builder();
@@ -68,7 +347,7 @@ public class CharacterRamp {
         return characterLuminescences;
     }
 
-    private static GrayscaleImage createImage(String symbols, CharacterBounds bounds) {
+    static GrayscaleImage createImage(Font font, String symbols, CharacterBounds bounds) {
         BufferedImage image = new BufferedImage(bounds.width * symbols.length(),
                 bounds.heigth,
                 BufferedImage.TYPE_INT_ARGB);
@@ -77,7 +356,7 @@ public class CharacterRamp {
             g.setColor(Color.WHITE);
             g.fillRect(0, 0, image.getWidth(), image.getHeight());
             g.setColor(Color.BLACK);
-            g.setFont(FONT);
+            g.setFont(font);
             g.drawString(symbols, 0, -bounds.basline);
         } finally {
             g.dispose();
@@ -85,6 +364,29 @@ public class CharacterRamp {
         return GrayscaleImage.from(image);
     }
 
+    private static final class RampKey {
+        private final Font font;
+        private final String symbols;
+
+        private RampKey(Font font, String symbols) {
+            this.font = Objects.requireNonNull(font, "font is null");
+            this.symbols = Objects.requireNonNull(symbols, "symbols is null");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RampKey rampKey = (RampKey) o;
+            return font.equals(rampKey.font) && symbols.equals(rampKey.symbols);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(font, symbols);
+        }
+    }
+
     private static class CharacterLuminescence implements Comparable<CharacterLuminescence> {
         private final char character;
         private final float luminescence;
@@ -1,29 +1,56 @@
 package org.yah.tools.asciiart;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import org.yah.tools.asciiart.ConversionStats.Stage;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Objects;
 
 public class CharactersImage {
     private static final String LS = System.lineSeparator();
     private final char[][] characters;
+    private final int[][] colors;
+    private final AnsiColorWriter.Mode colorMode;
     private final String margin;
 
     public CharactersImage(char[][] characters, int margin) {
+        this(characters, null, null, margin);
+    }
+
+    /**
+     * @param colors    [y][x] 0xRRGGBB color of each character, written as ANSI escapes using colorMode, or null
+     * @param colorMode required if colors are set
+     */
+    public CharactersImage(char[][] characters, int[][] colors, AnsiColorWriter.Mode colorMode, int margin) {
         this.characters = Objects.requireNonNull(characters, "characters is null");
+        if (colors != null && colorMode == null)
+            throw new IllegalArgumentException("colorMode is required with colors");
+        this.colors = colors;
+        this.colorMode = colorMode;
         this.margin = createMargin(margin);
     }
+
+    /**
+     * @return the characters colors, or null if not colored
+     */
+    public int[][] getColors() {
+        return colors;
+    }
+
     @Override
     public String toString() {
         return toString(System.lineSeparator());
     }
 
+    /**
+     * @return the characters, without colors
+     */
     public String toString(String lineSeparator) {
-        final StringBuilder sb = new StringBuilder();
+        final StringBuilder sb = new StringBuilder(characters.length
+                * (margin.length() + characters[0].length + lineSeparator.length()));
         int height = characters.length;
         int width = characters[0].length;
         //noinspection ForLoopReplaceableByForEach
@@ -38,10 +65,59 @@ public class CharactersImage {
     }
 
     public void toFile(String lineSeparator, File output) throws IOException {
-        final String string = toString(lineSeparator);
-        try (OutputStream os = new FileOutputStream(output)) {
-            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
-            os.write(bytes);
+        final StageEvent event = StageEvent.start(Stage.WRITE);
+        final FileChannel channel = new FileOutputStream(output).getChannel();
+        try (CharactersWriter writer = new CharactersWriter(channel, lineSeparator)) {
+            write(writer);
+            writer.flush();
+            event.end(0, channel.position());
+        }
+    }
+
+    /**
+     * Write the characters to a writer, without colors, without flushing or closing it
+     */
+    public void write(Writer writer, String lineSeparator) throws IOException {
+        //noinspection ForLoopReplaceableByForEach
+        for (int y = 0; y < characters.length; y++) {
+            writer.write(margin);
+            writer.write(characters[y]);
+            writer.write(lineSeparator);
+        }
+    }
+
+    /**
+     * Write the rows as UTF-8 to an output stream, without closing it
+     */
+    public void write(OutputStream outputStream, String lineSeparator) throws IOException {
+        write(Channels.newChannel(outputStream), lineSeparator);
+    }
+
+    /**
+     * Write the rows as UTF-8 to a channel, without closing it
+     */
+    public void write(WritableByteChannel channel, String lineSeparator) throws IOException {
+        final CharactersWriter writer = new CharactersWriter(channel, lineSeparator);
+        write(writer);
+        writer.flush();
+    }
+
+    /**
+     * Write the rows to a characters writer, with ANSI colors escapes if colored, without flushing it
+     */
+    public void write(CharactersWriter writer) throws IOException {
+        final int marginLength = margin.length();
+        if (colors != null) {
+            final AnsiColorWriter colorWriter = new AnsiColorWriter(writer, colorMode);
+            for (int y = 0; y < characters.length; y++) {
+                colorWriter.writeRow(characters[y], colors[y], 0, characters[y].length, marginLength);
+            }
+            colorWriter.reset();
+            return;
+        }
+        //noinspection ForLoopReplaceableByForEach
+        for (int y = 0; y < characters.length; y++) {
+            writer.writeRow(characters[y], marginLength);
         }
     }
 
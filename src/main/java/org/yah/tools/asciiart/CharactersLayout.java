@@ -0,0 +1,31 @@
+package org.yah.tools.asciiart;
+
+/**
+ * Size of the generated characters image, in characters.
+ */
+public class CharactersLayout {
+    private final int width;
+    private final int height;
+    private final int margin;
+
+    public CharactersLayout(int width, int height, int margin) {
+        this.width = width;
+        this.height = height;
+        this.margin = margin;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of blank characters prepended to each row to center the image
+     */
+    public int getMargin() {
+        return margin;
+    }
+}
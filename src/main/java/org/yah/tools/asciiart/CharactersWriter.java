@@ -0,0 +1,141 @@
+package org.yah.tools.asciiart;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Write characters rows as UTF-8 to a channel, row by row, through a reused byte buffer.<br/>
+ * ASCII characters are copied to the buffer as is, the UTF-8 encoder is only used for rows containing other
+ * characters.
+ */
+public class CharactersWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final byte[] lineSeparator;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    public CharactersWriter(OutputStream outputStream, String lineSeparator) {
+        this(Channels.newChannel(outputStream), lineSeparator);
+    }
+
+    public CharactersWriter(WritableByteChannel channel, String lineSeparator) {
+        this(channel, lineSeparator, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CharactersWriter(WritableByteChannel channel, String lineSeparator, int bufferSize) {
+        this.channel = Objects.requireNonNull(channel, "channel is null");
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.UTF_8);
+        // room for at least one encoded character and the line separator
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, this.lineSeparator.length + 4));
+    }
+
+    /**
+     * Write margin spaces, row[offset, offset + length[ and the line separator
+     */
+    public void writeRow(char[] row, int offset, int length, int margin) throws IOException {
+        writeSpaces(margin);
+        write(row, offset, length);
+        newLine();
+    }
+
+    public void writeRow(char[] row, int margin) throws IOException {
+        writeRow(row, 0, row.length, margin);
+    }
+
+    /**
+     * Write chars[offset, offset + length[, without line separator
+     */
+    public void write(char[] chars, int offset, int length) throws IOException {
+        final int end = offset + length;
+        final byte[] bytes = buffer.array();
+        int position = buffer.position();
+        for (int i = offset; i < end; i++) {
+            final char c = chars[i];
+            if (c >= 0x80) {
+                buffer.position(position);
+                encode(chars, i, end - i);
+                position = buffer.position();
+                break;
+            }
+            if (position == bytes.length) {
+                buffer.position(position);
+                flush();
+                position = 0;
+            }
+            bytes[position++] = (byte) c;
+        }
+        buffer.position(position);
+    }
+
+    public void writeSpaces(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            ensureRemaining(1);
+            buffer.put((byte) ' ');
+        }
+    }
+
+    /**
+     * Write the line separator
+     */
+    public void newLine() throws IOException {
+        ensureRemaining(lineSeparator.length);
+        buffer.put(lineSeparator);
+    }
+
+    /**
+     * Write all buffered bytes to the channel
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flush and close the channel
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void encode(char[] row, int offset, int length) throws IOException {
+        final CharBuffer in = CharBuffer.wrap(row, offset, length);
+        CoderResult result;
+        while ((result = encoder.encode(in, buffer, true)).isOverflow()) {
+            flush();
+        }
+        if (result.isError())
+            result.throwException();
+        while (encoder.flush(buffer).isOverflow()) {
+            flush();
+        }
+        encoder.reset();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            flush();
+    }
+}
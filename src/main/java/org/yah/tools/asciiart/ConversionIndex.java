@@ -0,0 +1,203 @@
+package org.yah.tools.asciiart;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Persistent index of the converted input files: size, last modification time and content hash of each input, with
+ * the hash of the generation parameters it was converted with.<br/>
+ * An input whose size and modification time did not change is not read again. When they changed, the content is
+ * hashed and the input is only converted again if its content or the parameters changed.
+ */
+public class ConversionIndex {
+
+    /**
+     * Identifies an index file: "ARIX"
+     */
+    private static final int INDEX_MAGIC = 0x41524958;
+    private static final int INDEX_VERSION = 1;
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Inputs modified less than this before being indexed may change again within the file system time resolution,
+     * their modification time is not trusted and their content is hashed on the next check
+     */
+    private static final long RACY_MILLIS = 2000;
+
+    /**
+     * Load an index file, or create an empty index if the file does not exist
+     */
+    public static ConversionIndex load(Path file) throws IOException {
+        final ConversionIndex index = new ConversionIndex(file);
+        if (!Files.exists(file))
+            return index;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (dis.readInt() != INDEX_MAGIC)
+                throw new IOException("Not a conversion index " + file);
+            final int version = dis.readInt();
+            if (version != INDEX_VERSION)
+                throw new IOException("Unsupported conversion index version " + version);
+            final int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = dis.readUTF();
+                final long size = dis.readLong();
+                final long modified = dis.readLong();
+                final long parameters = dis.readLong();
+                final byte[] hash = new byte[dis.readUnsignedByte()];
+                dis.readFully(hash);
+                index.entries.put(path, new Entry(path, size, modified, parameters, hash));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return a hash of the generation parameters, such as symbols, sizes, flags and line separator
+     */
+    public static long parametersHash(String parameters) {
+        final byte[] hash = newDigest().digest(parameters.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(hash).getLong();
+    }
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> checked = new HashSet<>();
+    private final MessageDigest digest = newDigest();
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private ConversionIndex(Path file) {
+        this.file = Objects.requireNonNull(file, "file is null");
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the current state of the input, hashing its content only if its size or modification time changed
+     * since indexed
+     * @see #isIndexed(Entry)
+     */
+    public synchronized Entry check(Path input, long parameters) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        final String path = key(input);
+        checked.add(path);
+        final long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (System.currentTimeMillis() - modified < RACY_MILLIS)
+            modified = -1;
+
+        final Entry entry = entries.get(path);
+        if (entry != null && entry.parameters == parameters && entry.size == size && entry.modified == modified
+                && modified >= 0)
+            return entry;
+        final Entry current = new Entry(path, size, modified, parameters, hash(input));
+        if (entry != null && entry.parameters == parameters && Arrays.equals(entry.hash, current.hash)) {
+            // touched, same content
+            entries.put(path, current);
+        }
+        return current;
+    }
+
+    /**
+     * @return true if the checked input was converted with the same content and parameters, false if it must be
+     * converted and then {@link #put(Entry)}
+     */
+    public synchronized boolean isIndexed(Entry entry) {
+        return entries.get(entry.path) == entry;
+    }
+
+    /**
+     * Record a converted input
+     */
+    public synchronized void put(Entry entry) {
+        entries.put(entry.path, entry);
+    }
+
+    /**
+     * Forget the inputs under a directory that were not checked since this index was loaded, such as deleted or
+     * renamed files
+     */
+    public synchronized void removeUnchecked(Path directory) {
+        final String prefix = key(directory) + File.separator;
+        entries.keySet().removeIf(path -> path.startsWith(prefix) && !checked.contains(path));
+    }
+
+    /**
+     * Write the index file, replacing the previous one only once completely written
+     */
+    public synchronized void save() throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                dos.writeInt(INDEX_MAGIC);
+                dos.writeInt(INDEX_VERSION);
+                dos.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    dos.writeUTF(entry.path);
+                    dos.writeLong(entry.size);
+                    dos.writeLong(entry.modified);
+                    dos.writeLong(entry.parameters);
+                    dos.writeByte(entry.hash.length);
+                    dos.write(entry.hash);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private byte[] hash(Path input) throws IOException {
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+        }
+    }
+
+    public static final class Entry {
+        private final String path;
+        private final long size;
+        /**
+         * last modification time in milliseconds, -1 if not trusted
+         */
+        private final long modified;
+        private final long parameters;
+        private final byte[] hash;
+
+        private Entry(String path, long size, long modified, long parameters, byte[] hash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.parameters = parameters;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package org.yah.tools.asciiart;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.yah.tools.asciiart.GrayscaleImage.PixelFormat;
+
+import javax.imageio.ImageIO;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP server converting posted image bytes, keeping the generators of the requested symbols warm between
+ * requests.<br/>
+ * <ul>
+ * <li>POST /convert: the image bytes as body, the options as query parameters: width, height, symbols, invert, mode,
+ * color, color-bits, area-average, lazy-transform and ls (LINUX or WINDOWS, default to LINUX). Responds the UTF-8
+ * characters. Outputs larger than {@link #MAX_CHARACTERS} characters along an axis, and symbols longer than
+ * {@link #MAX_SYMBOLS}, are rejected with 400.</li>
+ * <li>GET /stats: requests counters and latency percentiles, as "name value" lines.</li>
+ * </ul>
+ * Conversions run in a fixed pool of workers. Requests received while all the workers are busy and the queue is
+ * full are rejected with 503, without reading their body.
+ */
+public class ConversionServer {
+
+    /**
+     * Largest accepted image, in bytes
+     */
+    public static final int MAX_IMAGE_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Largest output width or height, in characters
+     */
+    public static final int MAX_CHARACTERS = 2048;
+
+    /**
+     * Longest accepted symbols
+     */
+    public static final int MAX_SYMBOLS = 256;
+
+    /**
+     * Most recently used generators kept, per symbols and color bits. Their ramps are not in the ramps cache, so this
+     * bounds the ramps kept for the requested symbols.
+     */
+    private static final int GENERATORS_CACHE_SIZE = 16;
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final Semaphore permits;
+    private final PixelFormat format;
+    private final boolean direct;
+    private final Stats stats = new Stats();
+
+    private final Map<String, AsciiArtGenerator> generators = new LinkedHashMap<String, AsciiArtGenerator>(16,
+            0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AsciiArtGenerator> eldest) {
+            return size() > GENERATORS_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @param threads   number of conversion workers
+     * @param queueSize number of accepted requests waiting for a worker
+     */
+    public ConversionServer(InetSocketAddress address,
+                            int threads,
+                            int queueSize,
+                            PixelFormat format,
+                            boolean direct) throws IOException {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Invalid threads " + threads);
+        if (queueSize < 0)
+            throw new IllegalArgumentException("Invalid queue size " + queueSize);
+        this.format = Objects.requireNonNull(format, "format is null");
+        this.direct = direct;
+        permits = new Semaphore(threads + queueSize);
+        final AtomicInteger count = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "ascii-art-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(Objects.requireNonNull(address, "address is null"), 0);
+        // handlers run on the server thread: conversions are dispatched to the workers
+        server.createContext("/convert", this::dispatch);
+        server.createContext("/stats", this::respondStats);
+    }
+
+    /**
+     * Start accepting requests, after creating the generator of the default symbols
+     */
+    public void start() {
+        ImageIO.setUseCache(false);
+        generator(AsciiArtCommandLine.DEFAULT_SYMBOLS, AsciiArtGenerator.DEFAULT_COLOR_BITS);
+        server.start();
+    }
+
+    /**
+     * @param delay seconds to wait for the exchanges in progress
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        workers.shutdownNow();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "POST an image");
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            stats.rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, "Server busy");
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            workers.execute(() -> {
+                try {
+                    convert(exchange, start);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            respond(exchange, 503, "Server stopping");
+        }
+    }
+
+    private void convert(HttpExchange exchange, long start) {
+        try {
+            final Request request;
+            final byte[] image;
+            try {
+                request = new Request(exchange.getRequestURI().getRawQuery());
+                image = readBody(exchange);
+            } catch (IllegalArgumentException e) {
+                stats.failed.incrementAndGet();
+                respond(exchange, e instanceof TooLargeException ? 413 : 400, e.getMessage());
+                return;
+            }
+
+            final byte[] response;
+            try {
+                final AsciiArtGenerator generator = generator(request.symbols, request.colorBits);
+                final ImageDecoder decoder = new ImageDecoder(generator, format, direct,
+                        ImageDecoder.DEFAULT_MAX_REGION_PIXELS, request.flags);
+                final GrayscaleImage grayscaleImage = decoder.decode(new ByteArrayInputStream(image),
+                        request.width, request.height);
+                // a size derived from a thin image aspect ratio can still be too large
+                final CharactersLayout layout = generator.layout(grayscaleImage.getWidth(),
+                        grayscaleImage.getHeight(), request.width, request.height);
+                if (layout.getMargin() + layout.getWidth() > MAX_CHARACTERS || layout.getHeight() > MAX_CHARACTERS)
+                    throw new IllegalArgumentException("Output larger than " + MAX_CHARACTERS + " characters");
+                final CharactersImage charactersImage = generator.generate(grayscaleImage, request.width,
+                        request.height, request.flags);
+                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(image.length / 4);
+                charactersImage.write(outputStream, request.lineSeparator);
+                response = outputStream.toByteArray();
+            } catch (IOException | IllegalArgumentException e) {
+                stats.failed.incrementAndGet();
+                respond(exchange, 400, "Error converting image: " + e.getMessage());
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+            stats.succeeded(System.nanoTime() - start, image.length, response.length);
+        } catch (IOException | RuntimeException e) {
+            stats.failed.incrementAndGet();
+            try {
+                respond(exchange, 500, e.toString());
+            } catch (IOException | RuntimeException ignored) {
+                // response already started, or connection lost
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private AsciiArtGenerator generator(String symbols, int colorBits) {
+        final String key = colorBits + ":" + symbols;
+        synchronized (generators) {
+            final AsciiArtGenerator generator = generators.get(key);
+            if (generator != null)
+                return generator;
+        }
+        // rendering the symbols does not block the other requests
+        final AsciiArtGenerator generator = new AsciiArtGenerator(CharacterRamp.rasterize(CharacterRamp.FONT,
+                symbols), colorBits);
+        synchronized (generators) {
+            final AsciiArtGenerator previous = generators.putIfAbsent(key, generator);
+            return previous != null ? previous : generator;
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        final long contentLength = contentLength(exchange.getRequestHeaders().getFirst("Content-Length"));
+        if (contentLength > MAX_IMAGE_BYTES)
+            throw new TooLargeException();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream(
+                contentLength >= 0 ? (int) contentLength : 64 * 1024);
+        final byte[] buffer = new byte[64 * 1024];
+        try (InputStream is = exchange.getRequestBody()) {
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                if (body.size() + read > MAX_IMAGE_BYTES)
+                    throw new TooLargeException();
+                body.write(buffer, 0, read);
+            }
+        }
+        if (body.size() == 0)
+            throw new IllegalArgumentException("No image");
+        return body.toByteArray();
+    }
+
+    /**
+     * @return the Content-Length header value, -1 if absent
+     */
+    private static long contentLength(String value) {
+        if (value == null)
+            return -1;
+        final long res;
+        try {
+            res = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid Content-Length: " + value);
+        }
+        if (res < 0)
+            throw new IllegalArgumentException("Invalid Content-Length: " + value);
+        return res;
+    }
+
+    private void respondStats(HttpExchange exchange) throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (PrintWriter printWriter = new PrintWriter(writer)) {
+            stats.print(printWriter, permits);
+        }
+        respond(exchange, 200, writer.toString());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        final byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+        exchange.close();
+    }
+
+    /**
+     * Conversion options, from the query parameters
+     */
+    private static final class Request {
+        private int width = -1;
+        private int height = -1;
+        private String symbols = AsciiArtCommandLine.DEFAULT_SYMBOLS;
+        private int flags = AsciiArtGenerator.NORMALIZE;
+        private int colorBits = AsciiArtGenerator.DEFAULT_COLOR_BITS;
+        private String lineSeparator = "\n";
+
+        private Request(String query) {
+            if (query == null || query.isEmpty())
+                return;
+            for (String parameter : query.split("&")) {
+                final int index = parameter.indexOf('=');
+                final String name = decode(index < 0 ? parameter : parameter.substring(0, index));
+                final String value = index < 0 ? "" : decode(parameter.substring(index + 1));
+                set(name, value);
+            }
+            if (symbols.isEmpty() || symbols.length() > MAX_SYMBOLS)
+                throw new IllegalArgumentException("symbols must have 1 to " + MAX_SYMBOLS + " characters");
+            if (width > MAX_CHARACTERS || height > MAX_CHARACTERS)
+                throw new IllegalArgumentException("width and height must be at most " + MAX_CHARACTERS);
+            if (colorBits < 1 || colorBits > 8)
+                throw new IllegalArgumentException("color bits must be between 1 and 8");
+        }
+
+        private void set(String name, String value) {
+            switch (name) {
+                case "width":
+                    width = parseInt(name, value);
+                    break;
+                case "height":
+                    height = parseInt(name, value);
+                    break;
+                case "symbols":
+                    symbols = value;
+                    break;
+                case "invert":
+                    flags |= flag(name, value, AsciiArtGenerator.INVERT);
+                    break;
+                case "area-average":
+                    flags |= flag(name, value, AsciiArtGenerator.AREA_AVERAGE);
+                    break;
+                case "lazy-transform":
+                    flags |= flag(name, value, AsciiArtGenerator.LAZY_TRANSFORM);
+                    break;
+                case "mode":
+                    if (value.equals("quadrant"))
+                        flags |= AsciiArtGenerator.QUADRANT;
+                    else if (value.equals("braille"))
+                        flags |= AsciiArtGenerator.BRAILLE;
+                    else if (value.equals("shape"))
+                        flags |= AsciiArtGenerator.SHAPE;
+                    else if (value.equals("edges"))
+                        flags |= AsciiArtGenerator.EDGES;
+                    else if (!value.equals("ramp"))
+                        throw new IllegalArgumentException("Invalid mode " + value);
+                    break;
+                case "color":
+                    if (value.equals("truecolor"))
+                        flags |= AsciiArtGenerator.TRUECOLOR;
+                    else if (value.equals("256"))
+                        flags |= AsciiArtGenerator.ANSI256;
+                    else
+                        throw new IllegalArgumentException("Invalid color mode " + value);
+                    break;
+                case "dither":
+                    if (value.equals("floyd-steinberg"))
+                        flags |= AsciiArtGenerator.FLOYD_STEINBERG;
+                    else if (value.equals("atkinson"))
+                        flags |= AsciiArtGenerator.ATKINSON;
+                    else if (value.equals("bayer"))
+                        flags |= AsciiArtGenerator.BAYER;
+                    else
+                        throw new IllegalArgumentException("Invalid dithering " + value);
+                    break;
+                case "color-bits":
+                    colorBits = parseInt(name, value);
+                    break;
+                case "ls":
+                    if (value.equals("WINDOWS"))
+                        lineSeparator = "\r\n";
+                    else if (value.equals("LINUX"))
+                        lineSeparator = "\n";
+                    else
+                        throw new IllegalArgumentException("Invalid platform " + value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter " + name);
+            }
+        }
+
+        private static int flag(String name, String value, int flag) {
+            if (value.isEmpty() || value.equals("true"))
+                return flag;
+            if (value.equals("false"))
+                return 0;
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+
+        private static int parseInt(String name, String value) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value);
+            }
+        }
+
+        private static String decode(String value) {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class TooLargeException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        private TooLargeException() {
+            super("Image larger than " + MAX_IMAGE_BYTES + " bytes");
+        }
+    }
+
+    public static final class Stats {
+        private final long startTime = System.nanoTime();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong bytesIn = new AtomicLong();
+        private final AtomicLong bytesOut = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private void succeeded(long nanos, long in, long out) {
+            succeeded.incrementAndGet();
+            bytesIn.addAndGet(in);
+            bytesOut.addAndGet(out);
+            synchronized (latency) {
+                latency.record(nanos);
+            }
+        }
+
+        public long getSucceeded() {
+            return succeeded.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return number of requests rejected because the queue was full
+         */
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        /**
+         * @param percentile in [0, 100]
+         * @return latency of the succeeded requests, from dispatch to response written, in nanoseconds
+         */
+        public long getLatency(double percentile) {
+            synchronized (latency) {
+                return latency.getPercentile(percentile);
+            }
+        }
+
+        private void print(PrintWriter out, Semaphore permits) {
+            final double seconds = (System.nanoTime() - startTime) / 1E9;
+            out.printf(Locale.ROOT, "uptime_seconds %.1f%n", seconds);
+            out.printf(Locale.ROOT, "requests_succeeded %d%n", getSucceeded());
+            out.printf(Locale.ROOT, "requests_failed %d%n", getFailed());
+            out.printf(Locale.ROOT, "requests_rejected %d%n", getRejected());
+            out.printf(Locale.ROOT, "requests_available %d%n", permits.availablePermits());
+            out.printf(Locale.ROOT, "throughput_per_second %.2f%n", getSucceeded() / seconds);
+            out.printf(Locale.ROOT, "bytes_in %d%n", bytesIn.get());
+            out.printf(Locale.ROOT, "bytes_out %d%n", bytesOut.get());
+            synchronized (latency) {
+                for (double percentile : new double[]{50, 90, 99}) {
+                    out.printf(Locale.ROOT, "latency_p%d_ms %.3f%n", (int) percentile,
+                            latency.getPercentile(percentile) / 1E6);
+                }
+                out.printf(Locale.ROOT, "latency_max_ms %.3f%n", latency.getMax() / 1E6);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.yah.tools.asciiart;
+
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+/**
+ * Durations and processed amounts of the conversion stages, recorded from all threads while recording.<br/>
+ * Stages are also reported as JFR events in the "ASCII Art" category, with or without a recording.
+ */
+public final class ConversionStats {
+
+    public enum Stage {
+        /**
+         * image file decoding
+         */
+        DECODE("Decode", StageEvent.Decode::new),
+        /**
+         * decoded image conversion to grayscale
+         */
+        GRAYSCALE("Grayscale", StageEvent.Grayscale::new),
+        /**
+         * grayscale normalization and inversion
+         */
+        TRANSFORM("Transform", StageEvent.Transform::new),
+        /**
+         * characters selection
+         */
+        SAMPLE("Sample", StageEvent.Sample::new),
+        /**
+         * characters image file writing
+         */
+        WRITE("Write", StageEvent.Write::new);
+
+        private final String label;
+        private final Supplier<StageEvent> eventFactory;
+        /**
+         * never begun nor committed, returned by {@link StageEvent#start(Stage)} while nothing records
+         */
+        private final StageEvent idleEvent;
+
+        Stage(String label, Supplier<StageEvent> eventFactory) {
+            this.label = label;
+            this.eventFactory = eventFactory;
+            this.idleEvent = eventFactory.get();
+        }
+
+        StageEvent newEvent() {
+            return eventFactory.get();
+        }
+
+        StageEvent idleEvent() {
+            return idleEvent;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static volatile ConversionStats recording;
+
+    /**
+     * Start recording the stages, replacing the current recording
+     */
+    public static ConversionStats record() {
+        final ConversionStats stats = new ConversionStats();
+        recording = stats;
+        return stats;
+    }
+
+    public static void stop() {
+        recording = null;
+    }
+
+    /**
+     * @return the current recording, null if not recording
+     */
+    static ConversionStats recording() {
+        return recording;
+    }
+
+    private final LatencyHistogram[] durations = new LatencyHistogram[Stage.values().length];
+    private final long[] pixels = new long[durations.length];
+    private final long[] bytes = new long[durations.length];
+
+    private ConversionStats() {
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = new LatencyHistogram();
+        }
+    }
+
+    synchronized void record(Stage stage, long nanos, long pixels, long bytes) {
+        durations[stage.ordinal()].record(nanos);
+        this.pixels[stage.ordinal()] += pixels;
+        this.bytes[stage.ordinal()] += bytes;
+    }
+
+    public synchronized long getCount(Stage stage) {
+        return durations[stage.ordinal()].getCount();
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return the stage duration percentile, in nanoseconds
+     */
+    public synchronized long getPercentile(Stage stage, double percentile) {
+        return durations[stage.ordinal()].getPercentile(percentile);
+    }
+
+    public synchronized long getPixels(Stage stage) {
+        return pixels[stage.ordinal()];
+    }
+
+    public synchronized long getBytes(Stage stage) {
+        return bytes[stage.ordinal()];
+    }
+
+    /**
+     * Print one line per recorded stage, and the pixel loops in use
+     */
+    public synchronized void print(PrintStream out) {
+        for (Stage stage : Stage.values()) {
+            final LatencyHistogram histogram = durations[stage.ordinal()];
+            if (histogram.getCount() == 0)
+                continue;
+            final StringBuilder line = new StringBuilder(String.format("%-10s %6d x %s, total %.2f s",
+                    stage.label + ":", histogram.getCount(), histogram.toMillisString(),
+                    histogram.getMean() * histogram.getCount() / 1E9));
+            if (pixels[stage.ordinal()] > 0)
+                line.append(String.format(", %.1f Mpixels", pixels[stage.ordinal()] / 1E6));
+            if (bytes[stage.ordinal()] > 0)
+                line.append(String.format(", %.1f KB", bytes[stage.ordinal()] / 1024.0));
+            out.println(line);
+        }
+        out.printf("%-10s %s%n", "Kernels:", PixelKernels.get().getName());
+    }
+}
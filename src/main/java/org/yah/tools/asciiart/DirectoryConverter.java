@@ -0,0 +1,288 @@
+package org.yah.tools.asciiart;
+
+import javax.imageio.ImageIO;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Convert image files and directories of image files with a {@link BatchConverter}, directories being walked
+ * recursively and mirrored in the output directory.<br/>
+ * With a {@link ConversionIndex}, inputs that did not change since converted with the same parameters, and whose
+ * outputs still exist, are skipped. Directories can then be watched to convert the images as they are added or
+ * modified.
+ */
+public class DirectoryConverter {
+
+    /**
+     * Default index file name, in the output directory
+     */
+    public static final String INDEX_FILE = ".ascii-art-index";
+
+    /**
+     * Watch events are collected until none is received for this delay, so that a file being written is converted
+     * once
+     */
+    private static final long WATCH_QUIET_MILLIS = 500;
+
+    private final BatchConverter batchConverter;
+    private final Path outputDirectory;
+    private final Function<File, List<String>> outputNames;
+    private final ConversionIndex index;
+    private final long parameters;
+    private final Set<String> imageSuffixes;
+
+    /**
+     * @param outputNames names of the job outputs of an input file, see {@link BatchConverter.Job#getOutputs()}
+     * @param index       index of the converted inputs, null to convert all inputs
+     * @param parameters  {@link ConversionIndex#parametersHash(String) hash} of the generation parameters
+     */
+    public DirectoryConverter(BatchConverter batchConverter,
+                              File outputDirectory,
+                              Function<File, List<String>> outputNames,
+                              ConversionIndex index,
+                              long parameters) {
+        this.batchConverter = Objects.requireNonNull(batchConverter, "batchConverter is null");
+        this.outputDirectory = Objects.requireNonNull(outputDirectory, "outputDirectory is null").toPath();
+        this.outputNames = Objects.requireNonNull(outputNames, "outputNames is null");
+        this.index = index;
+        this.parameters = parameters;
+        imageSuffixes = Arrays.stream(ImageIO.getReaderFileSuffixes())
+                .map(suffix -> suffix.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Convert the input files, and the image files found in the input directories
+     *
+     * @param errors where failures are reported, as they occur
+     */
+    public Report convert(List<File> inputs, PrintStream errors) throws IOException, InterruptedException {
+        final List<Source> sources = new ArrayList<>();
+        for (File input : inputs) {
+            final Path path = input.toPath().toAbsolutePath().normalize();
+            if (Files.isDirectory(path)) {
+                sources.addAll(walk(path));
+            } else {
+                sources.add(new Source(path.getParent(), path));
+            }
+        }
+        final Report report = convertSources(sources, errors);
+        if (index != null) {
+            for (File input : inputs) {
+                if (input.isDirectory())
+                    index.removeUnchecked(input.toPath());
+            }
+            index.save();
+        }
+        return report;
+    }
+
+    /**
+     * Convert the images added or modified in the input directories, until interrupted
+     *
+     * @param out where the report of each conversion is printed
+     */
+    public void watch(List<File> inputs, PrintStream out, PrintStream errors) throws IOException,
+            InterruptedException {
+        final List<Path> roots = inputs.stream()
+                .filter(File::isDirectory)
+                .map(input -> input.toPath().toAbsolutePath().normalize())
+                .collect(Collectors.toList());
+        if (roots.isEmpty())
+            throw new IllegalArgumentException("No directory to watch");
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            final Map<WatchKey, Path> directories = new HashMap<>();
+            for (Path root : roots) {
+                register(root, watchService, directories);
+            }
+            while (!directories.isEmpty()) {
+                WatchKey key = watchService.take();
+                final Set<Path> changed = new TreeSet<>();
+                boolean overflow = false;
+                do {
+                    final Path directory = directories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                            continue;
+                        }
+                        final Path path = directory.resolve((Path) event.context());
+                        if (Files.isDirectory(path)) {
+                            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                                // files created before the directory is registered are found by the walk
+                                register(path, watchService, directories);
+                                changed.addAll(images(path));
+                            }
+                        } else if (isImage(path)) {
+                            changed.add(path);
+                        }
+                    }
+                    if (!key.reset())
+                        directories.remove(key);
+                } while ((key = watchService.poll(WATCH_QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                final List<Source> sources = new ArrayList<>();
+                if (overflow) {
+                    // events were lost
+                    for (Path root : roots) {
+                        sources.addAll(walk(root));
+                    }
+                } else {
+                    for (Path path : changed) {
+                        if (Files.isRegularFile(path))
+                            sources.add(new Source(root(roots, path), path));
+                    }
+                }
+                final Report report = convertSources(sources, errors);
+                if (index != null)
+                    index.save();
+                if (report.getConverted() > 0 || report.getFailed() > 0)
+                    report.print(out);
+            }
+        }
+    }
+
+    private Report convertSources(List<Source> sources, PrintStream errors) throws InterruptedException {
+        final List<BatchConverter.Job> jobs = new ArrayList<>(sources.size());
+        final Map<BatchConverter.Job, ConversionIndex.Entry> entries = new IdentityHashMap<>();
+        int skipped = 0, failed = 0;
+        for (Source source : sources) {
+            final Path directory = outputDirectory.resolve(source.root.relativize(source.file.getParent()));
+            final List<File> outputs = outputNames.apply(source.file.toFile()).stream()
+                    .map(name -> directory.resolve(name).toFile())
+                    .collect(Collectors.toList());
+            ConversionIndex.Entry entry = null;
+            try {
+                if (index != null) {
+                    entry = index.check(source.file, parameters);
+                    if (index.isIndexed(entry) && outputs.stream().allMatch(File::isFile)) {
+                        skipped++;
+                        continue;
+                    }
+                }
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                failed++;
+                errors.println("Error preparing " + source.file + ": " + e.getMessage());
+                continue;
+            }
+            final BatchConverter.Job job = new BatchConverter.Job(source.file.toFile(), outputs);
+            jobs.add(job);
+            if (entry != null)
+                entries.put(job, entry);
+        }
+        final BatchConverter.Report batchReport = batchConverter.run(jobs, errors, job -> {
+            if (index != null)
+                index.put(entries.get(job));
+        });
+        return new Report(sources.size(), skipped, failed, batchReport);
+    }
+
+    private List<Source> walk(Path root) throws IOException {
+        return images(root).stream()
+                .map(file -> new Source(root, file))
+                .collect(Collectors.toList());
+    }
+
+    private List<Path> images(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(path -> Files.isRegularFile(path) && isImage(path))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private boolean isImage(Path path) {
+        final String name = path.getFileName().toString();
+        final int index = name.lastIndexOf('.');
+        return index > 0 && imageSuffixes.contains(name.substring(index + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static void register(Path directory, WatchService watchService, Map<WatchKey, Path> directories)
+            throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                final WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, path);
+            }
+        }
+    }
+
+    /**
+     * @return the deepest watched root containing the path
+     */
+    private static Path root(List<Path> roots, Path path) {
+        Path root = null;
+        for (Path candidate : roots) {
+            if (path.startsWith(candidate) && (root == null || candidate.getNameCount() > root.getNameCount()))
+                root = candidate;
+        }
+        return root;
+    }
+
+    /**
+     * An input file and the directory its output path is relative to
+     */
+    private static final class Source {
+        private final Path root;
+        private final Path file;
+
+        private Source(Path root, Path file) {
+            this.root = root;
+            this.file = file;
+        }
+    }
+
+    public static final class Report {
+        private final int files;
+        private final int skipped;
+        private final int failed;
+        private final BatchConverter.Report batchReport;
+
+        private Report(int files, int skipped, int failed, BatchConverter.Report batchReport) {
+            this.files = files;
+            this.skipped = skipped;
+            this.failed = failed;
+            this.batchReport = batchReport;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return number of unchanged inputs
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getConverted() {
+            return batchReport.getSucceeded();
+        }
+
+        public int getFailed() {
+            return failed + batchReport.getFailed();
+        }
+
+        public BatchConverter.Report getBatchReport() {
+            return batchReport;
+        }
+
+        public void print(PrintStream out) {
+            if (skipped > 0)
+                out.printf("Skipped %d/%d unchanged files%n", skipped, files);
+            if (skipped < files)
+                batchReport.print(out);
+        }
+    }
+}
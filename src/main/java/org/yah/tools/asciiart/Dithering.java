@@ -0,0 +1,139 @@
+package org.yah.tools.asciiart;
+
+/**
+ * Spread the quantization error of the character ramp, so that areas between two symbols luminances mix both symbols
+ * instead of banding.<br/>
+ * Error diffusion modes push the error of each character to the next characters of the row and to the next rows,
+ * sampled rows must be processed in order. Ordered dithering compares each character to a threshold of its position
+ * in a Bayer matrix, rows are independent.
+ */
+enum Dithering {
+    /**
+     * 7/16 right, 3/16 below left, 5/16 below, 1/16 below right
+     */
+    FLOYD_STEINBERG(16, new int[][]{{1, 0, 7}, {-1, 1, 3}, {0, 1, 5}, {1, 1, 1}}),
+    /**
+     * 1/8 to the 2 next characters, to 3 characters below and to 1 character 2 rows below, 1/4 of the error is lost
+     * which keeps contrast
+     */
+    ATKINSON(8, new int[][]{{1, 0, 1}, {2, 0, 1}, {-1, 1, 1}, {0, 1, 1}, {1, 1, 1}, {0, 2, 1}}),
+    /**
+     * 8x8 Bayer matrix thresholds
+     */
+    BAYER(1, new int[0][]);
+
+    private static final int BAYER_BITS = 3;
+    private static final int BAYER_SIZE = 1 << BAYER_BITS;
+
+    /**
+     * [y * 8 + x] threshold of the position, in ]0, 1[
+     */
+    private static final float[] BAYER_MATRIX = bayerMatrix();
+
+    /**
+     * @return the dithering selected by the flags, or null
+     */
+    static Dithering of(int flags) {
+        if ((flags & AsciiArtGenerator.FLOYD_STEINBERG) != 0)
+            return FLOYD_STEINBERG;
+        if ((flags & AsciiArtGenerator.ATKINSON) != 0)
+            return ATKINSON;
+        if ((flags & AsciiArtGenerator.BAYER) != 0)
+            return BAYER;
+        return null;
+    }
+
+    /**
+     * {dx, dy, weight} of each diffused error part, weights are divided by divisor
+     */
+    private final int[][] kernel;
+    private final float divisor;
+    /**
+     * rows of errors kept: the current row and the rows below receiving errors
+     */
+    private final int errorRows;
+    /**
+     * columns added on each side of an errors row, so that errors can be pushed past the row ends
+     */
+    private final int padding;
+
+    Dithering(int divisor, int[][] kernel) {
+        this.kernel = kernel;
+        this.divisor = divisor;
+        int errorRows = 0, padding = 0;
+        for (int[] part : kernel) {
+            padding = Math.max(padding, Math.abs(part[0]));
+            errorRows = Math.max(errorRows, part[1] + 1);
+        }
+        this.errorRows = errorRows;
+        this.padding = padding;
+    }
+
+    boolean isDiffusion() {
+        return kernel.length > 0;
+    }
+
+    /**
+     * @return the length of the rolling rows buffer of a row of width characters
+     */
+    int errorsLength(int width) {
+        return errorRows * (width + 2 * padding);
+    }
+
+    /**
+     * Prepare the errors of row y: clear the row that was used by row y - 1, to receive errors of row y and
+     * following rows
+     *
+     * @param errors rolling rows buffer, cleared before row 0
+     */
+    void startRow(float[] errors, int width, int y) {
+        if (y == 0)
+            return;
+        final int stride = width + 2 * padding;
+        final int row = (y - 1) % errorRows * stride;
+        for (int i = row; i < row + stride; i++) {
+            errors[i] = 0;
+        }
+    }
+
+    /**
+     * @return the error pushed to character x of row y by the previous characters
+     */
+    float error(float[] errors, int width, int x, int y) {
+        return errors[y % errorRows * (width + 2 * padding) + padding + x];
+    }
+
+    /**
+     * Push the error of character x of row y to the next characters
+     */
+    void diffuse(float[] errors, int width, int x, int y, float error) {
+        final int stride = width + 2 * padding;
+        for (int[] part : kernel) {
+            errors[(y + part[1]) % errorRows * stride + padding + x + part[0]] += error * part[2] / divisor;
+        }
+    }
+
+    /**
+     * @return the Bayer threshold of character (x, y)
+     */
+    static float threshold(int x, int y) {
+        return BAYER_MATRIX[(y & (BAYER_SIZE - 1)) * BAYER_SIZE + (x & (BAYER_SIZE - 1))];
+    }
+
+    private static float[] bayerMatrix() {
+        final float[] res = new float[BAYER_SIZE * BAYER_SIZE];
+        for (int y = 0; y < BAYER_SIZE; y++) {
+            for (int x = 0; x < BAYER_SIZE; x++) {
+                // interleave the reversed bits of x ^ y and y
+                final int xy = x ^ y;
+                int index = 0;
+                for (int bit = 0; bit < BAYER_BITS; bit++) {
+                    index |= ((xy >> bit) & 1) << (2 * (BAYER_BITS - 1 - bit) + 1)
+                            | ((y >> bit) & 1) << (2 * (BAYER_BITS - 1 - bit));
+                }
+                res[y * BAYER_SIZE + x] = (index + 0.5f) / (BAYER_SIZE * BAYER_SIZE);
+            }
+        }
+        return res;
+    }
+}
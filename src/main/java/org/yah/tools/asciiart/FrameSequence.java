@@ -0,0 +1,318 @@
+package org.yah.tools.asciiart;
+
+import org.w3c.dom.Node;
+import org.yah.tools.asciiart.ConversionStats.Stage;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Iterate the frames of an animation: all the images of a multi-image file (animated GIF, ...), or the image files
+ * of a directory in frame number order.<br/>
+ * Frames all have the sequence size, GIF frames are composited on a canvas reused for the whole sequence.
+ */
+public abstract class FrameSequence implements Closeable {
+
+    private static final Pattern FRAME_NUMBER = Pattern.compile("(\\d+)\\D*$");
+
+    /**
+     * @param defaultDelay frame delay in milliseconds, when not defined by the image
+     */
+    public static FrameSequence open(File input, int defaultDelay) throws IOException {
+        if (input.isDirectory())
+            return new DirectoryFrames(input, defaultDelay);
+        final ImageInputStream inputStream = ImageIO.createImageInputStream(input);
+        if (inputStream == null)
+            throw new IOException("Can not open " + input);
+        try {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+            if (!readers.hasNext())
+                throw new IOException("unsupported image format");
+            final ImageReader reader = readers.next();
+            reader.setInput(inputStream, true, false);
+            return new ReaderFrames(reader, inputStream, defaultDelay);
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    protected final int defaultDelay;
+    protected int delay;
+
+    private FrameSequence(int defaultDelay) {
+        if (defaultDelay < 0)
+            throw new IllegalArgumentException("Invalid delay " + defaultDelay);
+        this.defaultDelay = defaultDelay;
+    }
+
+    public abstract int getWidth();
+
+    public abstract int getHeight();
+
+    /**
+     * Move to the next frame
+     *
+     * @return false if there is no more frame
+     */
+    public abstract boolean next() throws IOException;
+
+    /**
+     * @return the current frame, only valid until the next call to {@link #next()}
+     */
+    public abstract BufferedImage getFrame();
+
+    /**
+     * @return the current frame delay in milliseconds
+     */
+    public int getDelay() {
+        return delay;
+    }
+
+    /**
+     * Frames of an image reader. GIF frames are drawn at their position on the logical screen, after disposing the
+     * previous frame.
+     */
+    private static final class ReaderFrames extends FrameSequence {
+        private static final String GIF_STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+        private static final String GIF_IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+        private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+        private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+
+        private final ImageReader reader;
+        private final ImageInputStream inputStream;
+        private final BufferedImage canvas;
+        private final Graphics2D graphics;
+        private int index = -1;
+
+        /**
+         * current frame bounds and disposal, applied before drawing the next frame
+         */
+        private final Rectangle bounds = new Rectangle();
+        private String disposal;
+        private int[] previousPixels;
+
+        private ReaderFrames(ImageReader reader, ImageInputStream inputStream, int defaultDelay) throws IOException {
+            super(defaultDelay);
+            this.reader = reader;
+            this.inputStream = inputStream;
+            final Node screen = gifNode(reader.getStreamMetadata(), GIF_STREAM_FORMAT, "LogicalScreenDescriptor");
+            final int width = intAttribute(screen, "logicalScreenWidth", 0);
+            final int height = intAttribute(screen, "logicalScreenHeight", 0);
+            if (width > 0 && height > 0)
+                canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            else
+                canvas = new BufferedImage(reader.getWidth(0), reader.getHeight(0), BufferedImage.TYPE_INT_ARGB);
+            graphics = canvas.createGraphics();
+        }
+
+        @Override
+        public int getWidth() {
+            return canvas.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return canvas.getHeight();
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            final StageEvent event = StageEvent.start(Stage.DECODE);
+            final IIOImage image;
+            try {
+                image = reader.readAll(index + 1, null);
+            } catch (IndexOutOfBoundsException e) {
+                return false;
+            }
+            event.end((long) image.getRenderedImage().getWidth() * image.getRenderedImage().getHeight(), 0);
+            index++;
+            dispose();
+
+            final BufferedImage frame = (BufferedImage) image.getRenderedImage();
+            final Node descriptor = gifNode(image.getMetadata(), GIF_IMAGE_FORMAT, "ImageDescriptor");
+            final Node control = gifNode(image.getMetadata(), GIF_IMAGE_FORMAT, "GraphicControlExtension");
+            final int left = intAttribute(descriptor, "imageLeftPosition", 0);
+            final int top = intAttribute(descriptor, "imageTopPosition", 0);
+            final int delayTime = intAttribute(control, "delayTime", 0);
+            delay = delayTime > 0 ? delayTime * 10 : defaultDelay;
+            bounds.setBounds(left, top, frame.getWidth(), frame.getHeight());
+            Rectangle2D.intersect(bounds, new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()), bounds);
+            if (descriptor == null) {
+                // not a GIF, every image is a full frame
+                disposal = RESTORE_TO_BACKGROUND;
+                clear(0, 0, canvas.getWidth(), canvas.getHeight());
+            } else {
+                disposal = attribute(control, "disposalMethod");
+            }
+            if (RESTORE_TO_PREVIOUS.equals(disposal) && !bounds.isEmpty()) {
+                previousPixels = canvas.getRGB(bounds.x, bounds.y, bounds.width, bounds.height,
+                        previousPixels != null && previousPixels.length >= bounds.width * bounds.height
+                                ? previousPixels : null,
+                        0, bounds.width);
+            }
+            graphics.drawImage(frame, left, top, null);
+            return true;
+        }
+
+        @Override
+        public BufferedImage getFrame() {
+            return canvas;
+        }
+
+        @Override
+        public void close() throws IOException {
+            graphics.dispose();
+            reader.dispose();
+            inputStream.close();
+        }
+
+        private void dispose() {
+            if (bounds.isEmpty())
+                return;
+            if (RESTORE_TO_BACKGROUND.equals(disposal))
+                clear(bounds.x, bounds.y, bounds.width, bounds.height);
+            else if (RESTORE_TO_PREVIOUS.equals(disposal))
+                canvas.setRGB(bounds.x, bounds.y, bounds.width, bounds.height, previousPixels, 0, bounds.width);
+        }
+
+        private void clear(int x, int y, int width, int height) {
+            final Composite composite = graphics.getComposite();
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(x, y, width, height);
+            graphics.setComposite(composite);
+        }
+
+        private static Node gifNode(IIOMetadata metadata, String format, String name) {
+            if (metadata == null || !format.equals(metadata.getNativeMetadataFormatName()))
+                return null;
+            for (Node node = metadata.getAsTree(format).getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (name.equals(node.getNodeName()))
+                    return node;
+            }
+            return null;
+        }
+
+        private static String attribute(Node node, String name) {
+            if (node == null)
+                return null;
+            final Node attribute = node.getAttributes().getNamedItem(name);
+            return attribute == null ? null : attribute.getNodeValue();
+        }
+
+        private static int intAttribute(Node node, String name, int defaultValue) {
+            final String value = attribute(node, name);
+            if (value == null)
+                return defaultValue;
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * Frames of a directory, sorted by the last number of their name
+     */
+    private static final class DirectoryFrames extends FrameSequence {
+        private final List<File> files;
+        private final int width, height;
+        private int index = -1;
+        private BufferedImage frame;
+
+        private DirectoryFrames(File directory, int defaultDelay) throws IOException {
+            super(defaultDelay);
+            final Set<String> suffixes = new HashSet<>();
+            for (String suffix : ImageIO.getReaderFileSuffixes()) {
+                suffixes.add(suffix.toLowerCase(Locale.ROOT));
+            }
+            final File[] children = directory.listFiles(file -> file.isFile() && suffixes.contains(suffix(file)));
+            if (children == null || children.length == 0)
+                throw new IOException("No frame found in " + directory);
+            files = new ArrayList<>(Arrays.asList(children));
+            files.sort(Comparator.comparingLong((File file) -> frameNumber(file.getName()))
+                    .thenComparing(File::getName));
+            // the first frame gives the sequence size
+            frame = read(files.get(0));
+            width = frame.getWidth();
+            height = frame.getHeight();
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (++index >= files.size()) {
+                frame = null;
+                return false;
+            }
+            if (index > 0) {
+                final File file = files.get(index);
+                frame = read(file);
+                if (frame.getWidth() != width || frame.getHeight() != height)
+                    throw new IOException("frame " + file + " size " + frame.getWidth() + "x" + frame.getHeight()
+                            + " does not match " + width + "x" + height);
+            }
+            delay = defaultDelay;
+            return true;
+        }
+
+        @Override
+        public BufferedImage getFrame() {
+            return frame;
+        }
+
+        @Override
+        public void close() {
+            frame = null;
+        }
+
+        private static BufferedImage read(File file) throws IOException {
+            final StageEvent event = StageEvent.start(Stage.DECODE);
+            final BufferedImage image = ImageIO.read(file);
+            if (image == null)
+                throw new IOException("unsupported image format " + file);
+            event.end((long) image.getWidth() * image.getHeight(), 0);
+            return image;
+        }
+
+        private static String suffix(File file) {
+            final String name = file.getName();
+            final int index = name.lastIndexOf('.');
+            return index < 0 ? "" : name.substring(index + 1).toLowerCase(Locale.ROOT);
+        }
+
+        private static long frameNumber(String name) {
+            final Matcher matcher = FRAME_NUMBER.matcher(name);
+            if (!matcher.find())
+                return -1;
+            try {
+                return Long.parseLong(matcher.group(1));
+            } catch (NumberFormatException e) {
+                return Long.MAX_VALUE;
+            }
+        }
+    }
+}
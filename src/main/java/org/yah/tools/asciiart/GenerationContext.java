@@ -0,0 +1,171 @@
+package org.yah.tools.asciiart;
+
+import org.yah.tools.asciiart.GrayscaleImage.PixelFormat;
+
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+
+/**
+ * Buffers reused by the {@link AsciiArtGenerator} generate methods taking a context: grayscale image, sampling scratch
+ * arrays, dithering errors rows, and the characters and colors rows. Buffers grow to the largest image and layout
+ * generated with the context, then generating images no larger does not allocate them again. Generating the same
+ * image and layout again, such as the frames of a video read into one grayscale image, reuses the sampling state.<br/>
+ * A context is not thread safe: use one context per thread, such as a {@link ThreadLocal}, or a pool of contexts.
+ * The generator itself can be shared by all the threads.
+ */
+public final class GenerationContext {
+
+    private static final char[][] NO_CHARACTERS = new char[0][];
+    private static final int[][] NO_COLORS = new int[0][];
+
+    private final PixelFormat format;
+    private final boolean direct;
+
+    private GrayscaleImage grayscaleImage;
+    private float[] averages = new float[0];
+    private float[] resampled = new float[0];
+    private float[] errors = new float[0];
+    private char[][] characters = NO_CHARACTERS;
+    private int[][] colors = NO_COLORS;
+
+    /**
+     * last layout, and the generator and sizes it was computed for
+     */
+    private CharactersLayout layout;
+    private AsciiArtGenerator layoutGenerator;
+    private int layoutImageWidth;
+    private int layoutImageHeight;
+    private int layoutTargetWidth;
+    private int layoutTargetHeight;
+
+    /**
+     * last sampler, holding the last generated image
+     */
+    private AsciiArtGenerator.Sampler sampler;
+
+    /**
+     * last lazily transformed ramp, and its transform
+     */
+    private CharacterRamp transformedRamp;
+    private CharacterRamp transformSource;
+    private float transformMin;
+    private float transformRange;
+    private boolean transformInvert;
+
+    public GenerationContext() {
+        this(PixelFormat.FLOAT, false);
+    }
+
+    /**
+     * @param format grayscale pixels storage format
+     * @param direct store the grayscale pixels off-heap
+     */
+    public GenerationContext(PixelFormat format, boolean direct) {
+        this.format = Objects.requireNonNull(format, "format is null");
+        this.direct = direct;
+    }
+
+    /**
+     * @return the characters rows written by the last generate using the context buffers, at least
+     * {@link CharactersLayout#getHeight()} rows of at least {@link CharactersLayout#getWidth()} characters
+     */
+    public char[][] getCharacters() {
+        return characters;
+    }
+
+    /**
+     * @return the colors rows written by the last generate using the context buffers, if colored
+     */
+    public int[][] getColors() {
+        return colors;
+    }
+
+    /**
+     * Convert an image to grayscale into the context grayscale image
+     */
+    GrayscaleImage read(BufferedImage image, boolean keepColors, boolean parallel) {
+        if (grayscaleImage == null) {
+            grayscaleImage = GrayscaleImage.create(image.getWidth(), image.getHeight(), format, direct, keepColors);
+        } else {
+            grayscaleImage.reshape(image.getWidth(), image.getHeight(), keepColors, direct);
+        }
+        grayscaleImage.read(image, 0, parallel);
+        return grayscaleImage;
+    }
+
+    /**
+     * @return the layout computed by the generator, reused while the sizes do not change
+     */
+    CharactersLayout layout(AsciiArtGenerator generator, int imageWidth, int imageHeight, int targetWidth,
+                            int targetHeight) {
+        if (layout == null || layoutGenerator != generator || layoutImageWidth != imageWidth
+                || layoutImageHeight != imageHeight || layoutTargetWidth != targetWidth
+                || layoutTargetHeight != targetHeight) {
+            layout = generator.layout(imageWidth, imageHeight, targetWidth, targetHeight);
+            layoutGenerator = generator;
+            layoutImageWidth = imageWidth;
+            layoutImageHeight = imageHeight;
+            layoutTargetWidth = targetWidth;
+            layoutTargetHeight = targetHeight;
+        }
+        return layout;
+    }
+
+    AsciiArtGenerator.Sampler sampler() {
+        return sampler;
+    }
+
+    void sampler(AsciiArtGenerator.Sampler sampler) {
+        this.sampler = sampler;
+    }
+
+    float[] averages(int length) {
+        if (averages.length < length)
+            averages = new float[length];
+        return averages;
+    }
+
+    float[] resampled(int length) {
+        if (resampled.length < length)
+            resampled = new float[length];
+        return resampled;
+    }
+
+    float[] errors(int length) {
+        if (errors.length < length)
+            errors = new float[length];
+        return errors;
+    }
+
+    char[][] characters(CharactersLayout layout) {
+        final int width = layout.getWidth(), height = layout.getHeight();
+        if (characters.length < height || (height > 0 && characters[0].length < width))
+            characters = new char[Math.max(height, characters.length)][Math.max(width,
+                    characters.length > 0 ? characters[0].length : 0)];
+        return characters;
+    }
+
+    int[][] colors(CharactersLayout layout) {
+        final int width = layout.getWidth(), height = layout.getHeight();
+        if (colors.length < height || (height > 0 && colors[0].length < width))
+            colors = new int[Math.max(height, colors.length)][Math.max(width,
+                    colors.length > 0 ? colors[0].length : 0)];
+        return colors;
+    }
+
+    /**
+     * @return the ramp transformed by {@link CharacterRamp#transform(float, float, boolean)}, reused while the
+     * transform does not change, and rewritten when only the transform changes
+     */
+    CharacterRamp transform(CharacterRamp ramp, float min, float range, boolean invert) {
+        if (transformedRamp == null || transformSource != ramp || transformMin != min || transformRange != range
+                || transformInvert != invert) {
+            transformedRamp = ramp.transform(min, range, invert, transformSource == ramp ? transformedRamp : null);
+            transformSource = ramp;
+            transformMin = min;
+            transformRange = range;
+            transformInvert = invert;
+        }
+        return transformedRamp;
+    }
+}
@@ -0,0 +1,203 @@
+package org.yah.tools.asciiart;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Glyphs described by a {@link #GRID}x{@link #GRID} grid of luminances, normalized like the ramp luminescences, and
+ * matched to cells described the same way by the nearest glyph (squared euclidean distance).<br/>
+ * Nearest glyphs are searched in a k-d tree, and cached by cell features quantized to {@link #LEVELS} levels. A
+ * cached glyph is the nearest to the center of its quantization bucket, so the result only depends on the
+ * quantized features and is the same whatever the order or thread the cells are matched in.
+ */
+final class GlyphIndex {
+
+    static final int GRID = 3;
+    static final int FEATURES = GRID * GRID;
+
+    private static final int LEVEL_BITS = 4;
+    private static final int LEVELS = 1 << LEVEL_BITS;
+
+    /**
+     * Number of direct mapped cache entries, a power of 2
+     */
+    private static final int CACHE_BITS = 16;
+    private static final int CACHE_SIZE = 1 << CACHE_BITS;
+    private static final int INDEX_BITS = 16;
+
+    static GlyphIndex create(Font font, String symbols) {
+        final int length = symbols.length();
+        if (length == 0)
+            throw new IllegalArgumentException("need symbols");
+        if (length > 1 << INDEX_BITS)
+            throw new IllegalArgumentException("Too many symbols " + length);
+
+        final CharacterBounds bounds = CharacterBounds.of(font, symbols.charAt(0));
+        final GrayscaleImage image = CharacterRamp.createImage(font, symbols, bounds);
+        final float[] features = new float[length * FEATURES];
+        final MinMax.Builder minMaxBuilder = MinMax.builder();
+        for (int i = 0; i < length; i++) {
+            final int xOffset = i * bounds.width;
+            minMaxBuilder.add(image.average(xOffset, 0, xOffset + bounds.width, bounds.heigth));
+            image.averageGrid(xOffset, 0, bounds.width, bounds.heigth, GRID, GRID, features, i * FEATURES);
+        }
+        // same normalization than the ramp luminescences
+        final MinMax minMax = minMaxBuilder.build();
+        for (int i = 0; i < features.length; i++) {
+            features[i] = minMax.lerp(features[i]);
+        }
+        return new GlyphIndex(symbols.toCharArray(), features);
+    }
+
+    private final char[] symbols;
+
+    /**
+     * [glyph * FEATURES + feature]
+     */
+    private final float[] features;
+
+    /**
+     * implicit k-d tree: glyph at the middle of each [low, high[ range, its split dimension in splits
+     */
+    private final int[] tree;
+    private final int[] splits;
+
+    /**
+     * (quantized key << INDEX_BITS | glyph) + 1, 0 if empty
+     */
+    private final AtomicLongArray cache = new AtomicLongArray(CACHE_SIZE);
+
+    private GlyphIndex(char[] symbols, float[] features) {
+        this.symbols = symbols;
+        this.features = features;
+        tree = new int[symbols.length];
+        splits = new int[symbols.length];
+        for (int i = 0; i < tree.length; i++) {
+            tree[i] = i;
+        }
+        build(0, tree.length);
+    }
+
+    /**
+     * @param cellFeatures the cell GRID * GRID luminances, row by row
+     * @return the glyph nearest to the center of the cell quantization bucket
+     */
+    char get(float[] cellFeatures) {
+        long key = 0;
+        for (int i = 0; i < FEATURES; i++) {
+            key = key << LEVEL_BITS | level(cellFeatures[i]);
+        }
+        final int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - CACHE_BITS));
+        final long entry = cache.get(slot) - 1;
+        if (entry >= 0 && entry >>> INDEX_BITS == key)
+            return symbols[(int) (entry & ((1 << INDEX_BITS) - 1))];
+
+        final float[] center = new float[FEATURES];
+        for (int i = FEATURES - 1; i >= 0; i--) {
+            center[i] = ((key >>> ((FEATURES - 1 - i) * LEVEL_BITS) & (LEVELS - 1)) + 0.5f) / LEVELS;
+        }
+        final int glyph = nearest(center);
+        cache.lazySet(slot, (key << INDEX_BITS | glyph) + 1);
+        return symbols[glyph];
+    }
+
+    /**
+     * @return the glyph nearest to the cell features, without quantization
+     */
+    char getExact(float[] cellFeatures) {
+        return symbols[nearest(cellFeatures)];
+    }
+
+    private static int level(float value) {
+        // NaN and values out of [0, 1[ are clamped
+        if (!(value > 0))
+            return 0;
+        return Math.min(LEVELS - 1, (int) (value * LEVELS));
+    }
+
+    private int nearest(float[] target) {
+        final Nearest nearest = new Nearest();
+        search(0, tree.length, target, nearest);
+        return nearest.glyph;
+    }
+
+    private void search(int low, int high, float[] target, Nearest nearest) {
+        if (low >= high)
+            return;
+        final int mid = (low + high) >>> 1;
+        final int glyph = tree[mid];
+        nearest.offer(glyph, distance(glyph, target));
+        final int split = splits[mid];
+        final float diff = target[split] - features[glyph * FEATURES + split];
+        // lower range values are <= the middle value, upper range values are >=
+        if (diff < 0) {
+            search(low, mid, target, nearest);
+            if (diff * diff <= nearest.distance)
+                search(mid + 1, high, target, nearest);
+        } else {
+            search(mid + 1, high, target, nearest);
+            if (diff * diff <= nearest.distance)
+                search(low, mid, target, nearest);
+        }
+    }
+
+    private float distance(int glyph, float[] target) {
+        final int offset = glyph * FEATURES;
+        float distance = 0;
+        for (int i = 0; i < FEATURES; i++) {
+            final float diff = target[i] - features[offset + i];
+            distance += diff * diff;
+        }
+        return distance;
+    }
+
+    /**
+     * Split [low, high[ on its widest dimension, around the middle glyph
+     */
+    private void build(int low, int high) {
+        if (low >= high)
+            return;
+        int split = 0;
+        float widest = -1;
+        for (int feature = 0; feature < FEATURES; feature++) {
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for (int i = low; i < high; i++) {
+                final float value = features[tree[i] * FEATURES + feature];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > widest) {
+                widest = max - min;
+                split = feature;
+            }
+        }
+        final int dimension = split;
+        final Integer[] glyphs = new Integer[high - low];
+        for (int i = low; i < high; i++) {
+            glyphs[i - low] = tree[i];
+        }
+        Arrays.sort(glyphs, (a, b) -> Float.compare(features[a * FEATURES + dimension],
+                features[b * FEATURES + dimension]));
+        for (int i = low; i < high; i++) {
+            tree[i] = glyphs[i - low];
+        }
+        final int mid = (low + high) >>> 1;
+        splits[mid] = dimension;
+        build(low, mid);
+        build(mid + 1, high);
+    }
+
+    private static final class Nearest {
+        private int glyph = -1;
+        private float distance = Float.POSITIVE_INFINITY;
+
+        private void offer(int glyph, float distance) {
+            // lowest glyph index on ties, whatever the tree order
+            if (this.glyph < 0 || distance < this.distance || (distance == this.distance && glyph < this.glyph)) {
+                this.glyph = glyph;
+                this.distance = distance;
+            }
+        }
+    }
+}
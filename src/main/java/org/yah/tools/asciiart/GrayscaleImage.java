@@ -1,81 +1,614 @@
 package org.yah.tools.asciiart;
 
+import org.yah.tools.asciiart.ConversionStats.Stage;
+
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Arrays;
 
 public class GrayscaleImage {
 
+    /**
+     * Fractional bits of the summed-area table fixed-point sums
+     */
+    private static final int SUMMED_AREA_BITS = 24;
+    private static final double SUMMED_AREA_ONE = 1 << SUMMED_AREA_BITS;
+
+    public enum PixelFormat {
+        /**
+         * 32 bits float per pixel, lossless
+         */
+        FLOAT(4),
+        /**
+         * 16 bits per pixel, clamped to [0, 1]
+         */
+        SHORT(2),
+        /**
+         * 8 bits per pixel, clamped to [0, 1]
+         */
+        BYTE(1);
+
+        final int bytes;
+
+        PixelFormat(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
     public static GrayscaleImage from(BufferedImage image) {
+        return from(image, PixelFormat.FLOAT, false, false);
+    }
+
+    public static GrayscaleImage from(BufferedImage image, PixelFormat format, boolean direct) {
+        return from(image, format, direct, false);
+    }
+
+    /**
+     * @param format   pixel storage format, quantized formats use 2 to 4 times less memory than {@link PixelFormat#FLOAT}
+     * @param direct   store the pixels in an off-heap {@link java.nio.ByteBuffer}
+     * @param parallel convert rows in fork-join tasks
+     */
+    public static GrayscaleImage from(BufferedImage image, PixelFormat format, boolean direct, boolean parallel) {
+        return from(image, format, direct, parallel, false);
+    }
+
+    /**
+     * @param colors also keep the color of each pixel, for colored output
+     */
+    public static GrayscaleImage from(BufferedImage image,
+                                      PixelFormat format,
+                                      boolean direct,
+                                      boolean parallel,
+                                      boolean colors) {
         int imageWidth = image.getWidth();
         int imageHeight = image.getHeight();
 
-        int[] colorPixels = new int[imageWidth * imageHeight];
-        image.getRGB(0, 0, imageWidth, imageHeight, colorPixels, 0, imageWidth);
+        final StageEvent event = StageEvent.start(Stage.GRAYSCALE);
+        final GrayscaleImage grayscaleImage = create(imageWidth, imageHeight, format, direct, colors);
+        final RasterReader reader = RasterReader.create(image);
+        final MinMax.Builder minMax = ParallelRows.reduce(parallel, imageHeight, imageWidth,
+                (fromRow, toRow) -> reader.read(fromRow, toRow, grayscaleImage.pixels, grayscaleImage.colors,
+                        fromRow * imageWidth),
+                MinMax.Builder::add);
+        grayscaleImage.minMax = minMax.build();
+        event.end((long) imageWidth * imageHeight, 0);
+        return grayscaleImage;
+    }
 
-        float[][] grayPixels = new float[imageHeight][imageWidth];
-        for (int y = 0; y < imageHeight; y++) {
-            for (int x = 0; x < imageWidth; x++) {
-                int colorPixel = colorPixels[y * imageWidth + x];
-                float alpha = alpha(colorPixel);
-                grayPixels[y][x] = average(red(colorPixel), green(colorPixel), blue(colorPixel)) * (1f - alpha);
-            }
-        }
-        return new GrayscaleImage(grayPixels);
+    /**
+     * Create a black image, to be filled using {@link #read(BufferedImage, int)}
+     */
+    public static GrayscaleImage create(int width, int height, PixelFormat format, boolean direct) {
+        return create(width, height, format, direct, false);
+    }
+
+    public static GrayscaleImage create(int width, int height, PixelFormat format, boolean direct, boolean colors) {
+        return new GrayscaleImage(width, height, PixelBuffer.allocate(format, width * height, direct),
+                colors ? new int[width * height] : null);
     }
 
     /**
-     * [y][x] gray scale value
+     * [y * width + x] gray scale value
      */
-    private final float[][] pixels;
-    private final int width;
-    private final int height;
+    private PixelBuffer pixels;
+
+    /**
+     * [y * width + x] 0xRRGGBB source color, null if colors are not kept
+     */
+    private int[] colors;
+    private int width;
+    private int height;
+
+    /**
+     * [(y * (width + 1)) + x] sum of all pixels above and left of (x, y), in {@link #SUMMED_AREA_BITS} fixed-point,
+     * null until computed
+     */
+    private long[] summedAreaTable;
+
+    /**
+     * last allocated summed-area table, reused when the pixels change
+     */
+    private long[] summedAreaBuffer;
+
+    /**
+     * [y * target width + x] rows resampled by {@link #resample(int, int, float[], boolean)}, reused
+     */
+    private float[] resampleBuffer;
+
+    /**
+     * min and max of the pixels, null until computed
+     */
+    private MinMax minMax;
 
     public GrayscaleImage(float[][] pixels) {
-        this.pixels = pixels;
         height = pixels.length;
         width = pixels[0].length;
+        this.pixels = PixelBuffer.allocate(PixelFormat.FLOAT, width * height, false);
+        this.colors = null;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                this.pixels.set(y * width + x, pixels[y][x]);
+            }
+        }
+        minMax = MinMax.builder().add(pixels).build();
+    }
+
+    private GrayscaleImage(int width, int height, PixelBuffer pixels, int[] colors) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.colors = colors;
+    }
+
+    /**
+     * Change the dimensions of this image, to read another image of these dimensions, reusing the pixels storage
+     * when large enough. Pixels are undefined until read.
+     *
+     * @param colors keep the colors of the pixels
+     * @param direct store the pixels off-heap, if they are reallocated
+     */
+    void reshape(int width, int height, boolean colors, boolean direct) {
+        final int size = width * height;
+        if (pixels.size() < size)
+            pixels = PixelBuffer.allocate(pixels.format(), size, direct);
+        if (!colors)
+            this.colors = null;
+        else if (this.colors == null || this.colors.length < size)
+            this.colors = new int[size];
+        this.width = width;
+        this.height = height;
+        summedAreaTable = null;
+        minMax = null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public PixelFormat getFormat() {
+        return pixels.format();
+    }
+
+    public boolean hasColors() {
+        return colors != null;
+    }
+
+    /**
+     * @return the min and max of the pixels, computed during the grayscale conversion or on the first call
+     */
+    public MinMax getMinMax() {
+        return getMinMax(false);
+    }
+
+    public MinMax getMinMax(boolean parallel) {
+        if (minMax == null) {
+            minMax = ParallelRows.reduce(parallel, height, width, (fromRow, toRow) -> {
+                final MinMax.Builder minMaxBuilder = MinMax.builder();
+                pixels.minMax(fromRow * width, toRow * width, minMaxBuilder);
+                return minMaxBuilder;
+            }, MinMax.Builder::add).build();
+        }
+        return minMax;
+    }
+
+    /**
+     * Convert an image to grayscale into this image rows, starting at row y
+     */
+    public void read(BufferedImage image, int y) {
+        read(image, y, false);
+    }
+
+    public void read(BufferedImage image, int y, boolean parallel) {
+        if (image.getWidth() != width)
+            throw new IllegalArgumentException("image width " + image.getWidth() + " does not match " + width);
+        read(RasterReader.create(image), image.getHeight(), y, parallel);
+    }
+
+    /**
+     * Read with a reader created once for an image whose content changes, such as a raw frame buffer
+     */
+    void read(RasterReader reader, int imageHeight, int y, boolean parallel) {
+        final StageEvent event = StageEvent.start(Stage.GRAYSCALE);
+        final int rows = Math.min(imageHeight, height - y);
+        summedAreaTable = null;
+        minMax = null;
+        final MinMax.Builder minMaxBuilder = ParallelRows.reduce(parallel, rows, width,
+                (fromRow, toRow) -> reader.read(fromRow, toRow, pixels, colors, (y + fromRow) * width),
+                MinMax.Builder::add);
+        // the whole image was read
+        if (y == 0 && rows == height)
+            minMax = minMaxBuilder.build();
+        event.end((long) rows * width, 0);
+    }
+
+    /**
+     * Build the summed-area table in a single pass, so that {@link #average(int, int, int, int)} runs in O(1)
+     * regardless of the box size. The table is dropped by any method changing the pixels.<br/>
+     * The table takes 8 bytes per pixel, more than the pixels themselves: it pays off when the same pixels are
+     * averaged several times, such as overlapping boxes or several layouts of one image, not for a single pass of
+     * boxes tiling the image.
+     */
+    public GrayscaleImage computeSummedAreaTable() {
+        return computeSummedAreaTable(false);
+    }
+
+    /**
+     * @param parallel compute row sums, then accumulate columns, in fork-join tasks. Fixed-point sums are exact, so
+     *                 this produces the same table.
+     */
+    public GrayscaleImage computeSummedAreaTable(boolean parallel) {
+        final int stride = width + 1;
+        if (summedAreaBuffer == null || summedAreaBuffer.length < stride * (height + 1)) {
+            summedAreaBuffer = new long[stride * (height + 1)];
+        } else {
+            // reused after reshape, the first row and column are 0
+            Arrays.fill(summedAreaBuffer, 0, stride, 0);
+            for (int y = 1; y <= height; y++) {
+                summedAreaBuffer[y * stride] = 0;
+            }
+        }
+        final long[] table = summedAreaBuffer;
+        if (parallel) {
+            ParallelRows.forEach(true, height, width, (fromRow, toRow) -> {
+                for (int y = fromRow; y < toRow; y++) {
+                    final int offset = (y + 1) * stride;
+                    final int rowOffset = y * width;
+                    long rowSum = 0;
+                    for (int x = 0; x < width; x++) {
+                        rowSum += fixedPoint(pixels.get(rowOffset + x));
+                        table[offset + x + 1] = rowSum;
+                    }
+                }
+            });
+            // columns ranges, processed top to bottom
+            ParallelRows.forEach(true, width, height, (fromColumn, toColumn) -> {
+                for (int y = 1; y < height; y++) {
+                    final int offset = (y + 1) * stride;
+                    for (int x = fromColumn; x < toColumn; x++) {
+                        table[offset + x + 1] = table[offset - stride + x + 1] + table[offset + x + 1];
+                    }
+                }
+            });
+        } else {
+            for (int y = 0; y < height; y++) {
+                final int offset = (y + 1) * stride;
+                final int rowOffset = y * width;
+                long rowSum = 0;
+                for (int x = 0; x < width; x++) {
+                    rowSum += fixedPoint(pixels.get(rowOffset + x));
+                    table[offset + x + 1] = table[offset - stride + x + 1] + rowSum;
+                }
+            }
+        }
+        summedAreaTable = table;
+        return this;
+    }
+
+    private static long fixedPoint(float pixel) {
+        return Math.round(pixel * SUMMED_AREA_ONE);
+    }
+
+    boolean hasSummedAreaTable() {
+        return summedAreaTable != null;
+    }
+
+    /**
+     * Reduce this image by 2 along each axis, for a mipmap pyramid: each pixel is the average of a 2x2 box, the last
+     * row or column of an odd size averages the pixels it has. Colors are reduced the same way if kept.<br/>
+     * The reduced image stores its pixels as {@link PixelFormat#FLOAT} on heap, so that reductions are not quantized
+     * again.
+     */
+    public GrayscaleImage halve(boolean parallel) {
+        final int halfWidth = (width + 1) / 2;
+        final int halfHeight = (height + 1) / 2;
+        final GrayscaleImage res = new GrayscaleImage(halfWidth, halfHeight,
+                PixelBuffer.allocate(PixelFormat.FLOAT, halfWidth * halfHeight, false),
+                colors != null ? new int[halfWidth * halfHeight] : null);
+        ParallelRows.forEach(parallel, halfHeight, width * 2, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                final int row0 = 2 * y * width;
+                // a missing pixel repeats its neighbour, which averages the existing pixels
+                final int row1 = Math.min(2 * y + 1, height - 1) * width;
+                for (int x = 0; x < halfWidth; x++) {
+                    final int x0 = 2 * x;
+                    final int x1 = Math.min(x0 + 1, width - 1);
+                    final float sum = pixels.get(row0 + x0) + pixels.get(row0 + x1)
+                            + pixels.get(row1 + x0) + pixels.get(row1 + x1);
+                    res.pixels.set(y * halfWidth + x, sum * 0.25f);
+                    if (colors != null) {
+                        res.colors[y * halfWidth + x] = averageColors(colors[row0 + x0], colors[row0 + x1],
+                                colors[row1 + x0], colors[row1 + x1]);
+                    }
+                }
+            }
+        });
+        return res;
+    }
+
+    /**
+     * @return a copy of the pixels, stored as {@link PixelFormat#FLOAT} on heap like {@link #halve(boolean)}. The
+     * colors are shared, they are never changed.
+     */
+    GrayscaleImage copy(boolean parallel) {
+        final GrayscaleImage res = new GrayscaleImage(width, height,
+                PixelBuffer.allocate(PixelFormat.FLOAT, width * height, false), colors);
+        ParallelRows.forEach(parallel, height, width, (fromRow, toRow) -> {
+            for (int i = fromRow * width; i < toRow * width; i++) {
+                res.pixels.set(i, pixels.get(i));
+            }
+        });
+        res.minMax = minMax;
+        return res;
+    }
+
+    private static int averageColors(int c0, int c1, int c2, int c3) {
+        int res = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            final int sum = (c0 >> shift & 0xFF) + (c1 >> shift & 0xFF) + (c2 >> shift & 0xFF) + (c3 >> shift & 0xFF);
+            res |= ((sum + 2) >> 2) << shift;
+        }
+        return res;
     }
 
     public float average(int x, int y, int maxx, int maxy) {
         maxx = Math.min(maxx, width);
         maxy = Math.min(maxy, height);
+        if (summedAreaTable != null)
+            return (float) summedAreaAverage(x, y, maxx, maxy);
         float sum = 0;
         int pixelsCount = 0;
         for (int cy = y; cy < maxy; cy++) {
+            final int rowOffset = cy * width;
             for (int cx = x; cx < maxx; cx++) {
-                sum += pixels[cy][cx];
+                sum += pixels.get(rowOffset + cx);
                 pixelsCount++;
             }
         }
         return sum / pixelsCount;
     }
 
-    public void normalize() {
-        final MinMax minMax = MinMax.builder().add(pixels).build();
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                pixels[y][x] = minMax.lerp(pixels[y][x]);
+    /**
+     * Average accumulated in double, then transformed as (average - offset) * scale before rounding to float: a box of
+     * equal pixels averages to their transformed value, as if the pixels were transformed first.
+     */
+    float average(int x, int y, int maxx, int maxy, double offset, double scale) {
+        maxx = Math.min(maxx, width);
+        maxy = Math.min(maxy, height);
+        if (summedAreaTable != null)
+            return (float) ((summedAreaAverage(x, y, maxx, maxy) - offset) * scale);
+        double sum = 0;
+        int pixelsCount = 0;
+        for (int cy = y; cy < maxy; cy++) {
+            final int rowOffset = cy * width;
+            for (int cx = x; cx < maxx; cx++) {
+                sum += pixels.get(rowOffset + cx);
+                pixelsCount++;
             }
         }
+        return (float) ((sum / pixelsCount - offset) * scale);
     }
 
-    public void invert() {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                pixels[y][x] = 1f - pixels[y][x];
+    /**
+     * Average the columns x rows sub boxes of the box at (x, y), sub boxes smaller than a pixel sample the pixel they
+     * start in
+     *
+     * @param averages receive the columns * rows averages, row by row, from offset
+     */
+    public void averageGrid(float x,
+                            float y,
+                            float boxWidth,
+                            float boxHeight,
+                            int columns,
+                            int rows,
+                            float[] averages,
+                            int offset) {
+        final float stepx = boxWidth / columns;
+        final float stepy = boxHeight / rows;
+        for (int gy = 0; gy < rows; gy++) {
+            final int miny = (int) (y + gy * stepy);
+            final int maxy = Math.max(miny + 1, (int) (y + (gy + 1) * stepy));
+            for (int gx = 0; gx < columns; gx++) {
+                final int minx = (int) (x + gx * stepx);
+                final int maxx = Math.max(minx + 1, (int) (x + (gx + 1) * stepx));
+                averages[offset++] = average(minx, miny, maxx, maxy);
+            }
+        }
+    }
+
+    /**
+     * Same sub boxes, averaged by {@link #average(int, int, int, int, double, double)}
+     */
+    void averageGrid(float x,
+                     float y,
+                     float boxWidth,
+                     float boxHeight,
+                     int columns,
+                     int rows,
+                     float[] averages,
+                     double offset,
+                     double scale) {
+        final float stepx = boxWidth / columns;
+        final float stepy = boxHeight / rows;
+        int index = 0;
+        for (int gy = 0; gy < rows; gy++) {
+            final int miny = (int) (y + gy * stepy);
+            final int maxy = Math.max(miny + 1, (int) (y + (gy + 1) * stepy));
+            for (int gx = 0; gx < columns; gx++) {
+                final int minx = (int) (x + gx * stepx);
+                final int maxx = Math.max(minx + 1, (int) (x + (gx + 1) * stepx));
+                averages[index++] = average(minx, miny, maxx, maxy, offset, scale);
             }
         }
     }
 
+    /**
+     * Area average resampling: each output pixel is the average of the image area it covers, weighted by the
+     * fractional coverage of the pixels on its borders. Separable: rows are resampled, then columns, using weights
+     * cached by image and target size. Also upsamples.
+     *
+     * @param output receive the [y * targetWidth + x] resampled pixels
+     */
+    public void resample(int targetWidth, int targetHeight, float[] output, boolean parallel) {
+        if (output.length < targetWidth * targetHeight)
+            throw new IllegalArgumentException("output is smaller than " + targetWidth + "x" + targetHeight);
+        final AreaWeights columns = AreaWeights.of(width, targetWidth);
+        final AreaWeights rows = AreaWeights.of(height, targetHeight);
+        if (resampleBuffer == null || resampleBuffer.length < height * targetWidth)
+            resampleBuffer = new float[height * targetWidth];
+        final float[] buffer = resampleBuffer;
+        ParallelRows.forEach(parallel, height, width, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                final int rowOffset = y * width;
+                final int bufferOffset = y * targetWidth;
+                for (int x = 0; x < targetWidth; x++) {
+                    final int start = rowOffset + columns.starts[x];
+                    float sum = 0;
+                    for (int w = columns.offsets[x], i = start; w < columns.offsets[x + 1]; w++, i++) {
+                        sum += columns.weights[w] * pixels.get(i);
+                    }
+                    buffer[bufferOffset + x] = sum;
+                }
+            }
+        });
+        ParallelRows.forEach(parallel, targetHeight, Math.max(1, height / targetHeight) * targetWidth, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                final int outputOffset = y * targetWidth;
+                Arrays.fill(output, outputOffset, outputOffset + targetWidth, 0);
+                for (int w = rows.offsets[y], row = rows.starts[y]; w < rows.offsets[y + 1]; w++, row++) {
+                    final float weight = rows.weights[w];
+                    final int bufferOffset = row * targetWidth;
+                    for (int x = 0; x < targetWidth; x++) {
+                        output[outputOffset + x] += weight * buffer[bufferOffset + x];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Resample accumulated in double, then transformed as (average - offset) * scale before rounding to float, see
+     * {@link #average(int, int, int, int, double, double)}
+     */
+    void resample(int targetWidth, int targetHeight, float[] output, boolean parallel, double offset, double scale) {
+        if (output.length < targetWidth * targetHeight)
+            throw new IllegalArgumentException("output is smaller than " + targetWidth + "x" + targetHeight);
+        final AreaWeights columns = AreaWeights.of(width, targetWidth);
+        final AreaWeights rows = AreaWeights.of(height, targetHeight);
+        if (resampleBuffer == null || resampleBuffer.length < height * targetWidth)
+            resampleBuffer = new float[height * targetWidth];
+        final float[] buffer = resampleBuffer;
+        ParallelRows.forEach(parallel, height, width, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                final int rowOffset = y * width;
+                final int bufferOffset = y * targetWidth;
+                for (int x = 0; x < targetWidth; x++) {
+                    final int start = rowOffset + columns.starts[x];
+                    double sum = 0;
+                    for (int w = columns.offsets[x], i = start; w < columns.offsets[x + 1]; w++, i++) {
+                        sum += (double) columns.weights[w] * pixels.get(i);
+                    }
+                    buffer[bufferOffset + x] = (float) sum;
+                }
+            }
+        });
+        ParallelRows.forEach(parallel, targetHeight, Math.max(1, height / targetHeight) * targetWidth, (fromRow, toRow) -> {
+            for (int y = fromRow; y < toRow; y++) {
+                final int outputOffset = y * targetWidth;
+                for (int x = 0; x < targetWidth; x++) {
+                    double sum = 0;
+                    for (int w = rows.offsets[y], row = rows.starts[y]; w < rows.offsets[y + 1]; w++, row++) {
+                        sum += (double) rows.weights[w] * buffer[row * targetWidth + x];
+                    }
+                    output[outputOffset + x] = (float) ((sum - offset) * scale);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the average 0xRRGGBB color of the box, black if the box is empty
+     * @throws IllegalStateException if this image does not keep colors
+     */
+    public int averageColor(int x, int y, int maxx, int maxy) {
+        if (colors == null)
+            throw new IllegalStateException("colors are not kept");
+        maxx = Math.min(maxx, width);
+        maxy = Math.min(maxy, height);
+        long red = 0, green = 0, blue = 0;
+        for (int cy = y; cy < maxy; cy++) {
+            final int rowOffset = cy * width;
+            for (int cx = x; cx < maxx; cx++) {
+                final int color = colors[rowOffset + cx];
+                red += (color >> 16) & 0xFF;
+                green += (color >> 8) & 0xFF;
+                blue += color & 0xFF;
+            }
+        }
+        final long count = (long) Math.max(0, maxx - x) * Math.max(0, maxy - y);
+        if (count == 0)
+            return 0;
+        final long half = count / 2;
+        return (int) ((red + half) / count) << 16 | (int) ((green + half) / count) << 8 | (int) ((blue + half) / count);
+    }
+
+    private double summedAreaAverage(int x, int y, int maxx, int maxy) {
+        if (maxx <= x || maxy <= y)
+            return Double.NaN;
+        final int stride = width + 1;
+        final long[] table = summedAreaTable;
+        final long sum = table[maxy * stride + maxx] - table[y * stride + maxx]
+                - table[maxy * stride + x] + table[y * stride + x];
+        return sum / (SUMMED_AREA_ONE * ((maxx - x) * (maxy - y)));
+    }
+
+    public void normalize() {
+        normalize(false);
+    }
+
+    public void normalize(boolean parallel) {
+        normalize(null, parallel);
+    }
+
+    /**
+     * @param bounds min and max of other pixels, such as the image this image was reduced from, or null to use the
+     *               min and max of this image
+     */
+    void normalize(MinMax bounds, boolean parallel) {
+        final StageEvent event = StageEvent.start(Stage.TRANSFORM);
+        final MinMax minMax = bounds != null ? bounds : getMinMax(parallel);
+        summedAreaTable = null;
+        this.minMax = null;
+        ParallelRows.forEach(parallel, height, width,
+                (fromRow, toRow) -> pixels.lerp(fromRow * width, toRow * width, minMax));
+        event.end((long) width * height, 0);
+    }
+
+    public void invert() {
+        invert(false);
+    }
+
+    public void invert(boolean parallel) {
+        final StageEvent event = StageEvent.start(Stage.TRANSFORM);
+        summedAreaTable = null;
+        minMax = null;
+        ParallelRows.forEach(parallel, height, width,
+                (fromRow, toRow) -> pixels.invert(fromRow * width, toRow * width));
+        event.end((long) width * height, 0);
+    }
+
     @SuppressWarnings("unused")
     public void save(String file) {
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                image.setRGB(x, y, argb(pixels[y][x]));
+                image.setRGB(x, y, argb(pixels.get(y * width + x)));
             }
         }
         try {
@@ -85,6 +618,11 @@ public class GrayscaleImage {
         }
     }
 
+    static float gray(int argb) {
+        float alpha = alpha(argb);
+        return average(red(argb), green(argb), blue(argb)) * (1f - alpha);
+    }
+
     private static float average(float... values) {
         float res = 0;
         for (float value : values) {
@@ -0,0 +1,164 @@
+package org.yah.tools.asciiart;
+
+import org.yah.tools.asciiart.ConversionStats.Stage;
+import org.yah.tools.asciiart.GrayscaleImage.PixelFormat;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * Decode an image file directly to a {@link GrayscaleImage}, skipping source pixels that would not change the
+ * generated characters.<br/>
+ * The image is subsampled by the reader, keeping about {@link #SAMPLES_PER_CHARACTER} pixels per character, or per
+ * sub cell in the modes sampling a grid of each character (sub cells, shape and edges), along each axis. When the subsampled image is still larger than the region limit, and the format can read a region
+ * without decoding the rows before it (uncompressed TIFF, BMP, tiled images), it is decoded by horizontal strips so
+ * that the full color image is never held in memory.<br/>
+ * Sequential formats (PNG, GIF, JPEG) decode the stream from its start for each region, strips would cost a decode
+ * per strip: they are decoded in a single read.
+ */
+public class ImageDecoder {
+
+    /**
+     * Number of decoded pixels per output character or sub cell, along each axis
+     */
+    public static final int SAMPLES_PER_CHARACTER = 4;
+
+    /**
+     * Maximum number of pixels decoded at once, for formats that can be decoded by regions
+     */
+    public static final long DEFAULT_MAX_REGION_PIXELS = 16 * 1024 * 1024;
+
+    private final AsciiArtGenerator generator;
+    private final PixelFormat format;
+    private final boolean direct;
+    private final boolean parallel;
+    private final long maxRegionPixels;
+    private final boolean colors;
+    /**
+     * sub cells grid of a character in the generation mode
+     */
+    private final int columns;
+    private final int rows;
+
+    public ImageDecoder(AsciiArtGenerator generator, PixelFormat format, boolean direct) {
+        this(generator, format, direct, false, DEFAULT_MAX_REGION_PIXELS);
+    }
+
+    /**
+     * @param parallel convert decoded pixels to grayscale in fork-join tasks
+     */
+    public ImageDecoder(AsciiArtGenerator generator,
+                        PixelFormat format,
+                        boolean direct,
+                        boolean parallel,
+                        long maxRegionPixels) {
+        this(generator, format, direct, maxRegionPixels, parallel ? AsciiArtGenerator.PARALLEL : 0);
+    }
+
+    /**
+     * @param flags the flags the images are generated with: the mode sets the decoded pixels per character,
+     *              {@link AsciiArtGenerator#PARALLEL} converts decoded pixels to grayscale in fork-join tasks, and a
+     *              color mode keeps the decoded pixels colors
+     */
+    public ImageDecoder(AsciiArtGenerator generator,
+                        PixelFormat format,
+                        boolean direct,
+                        long maxRegionPixels,
+                        int flags) {
+        if (maxRegionPixels <= 0)
+            throw new IllegalArgumentException("Invalid max region pixels " + maxRegionPixels);
+        this.generator = Objects.requireNonNull(generator, "generator is null");
+        this.format = Objects.requireNonNull(format, "format is null");
+        this.direct = direct;
+        this.parallel = (flags & AsciiArtGenerator.PARALLEL) != 0;
+        this.maxRegionPixels = maxRegionPixels;
+        this.colors = AsciiArtGenerator.colorMode(flags) != null;
+        this.columns = AsciiArtGenerator.columns(flags);
+        this.rows = AsciiArtGenerator.rows(flags);
+    }
+
+    /**
+     * @param targetWidth  target width in characters, as given to {@link AsciiArtGenerator#generate}
+     * @param targetHeight target height in characters, as given to {@link AsciiArtGenerator#generate}
+     */
+    public GrayscaleImage decode(File input, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(input)) {
+            if (inputStream == null)
+                throw new IOException("Can not open " + input);
+            return decode(inputStream, targetWidth, targetHeight);
+        }
+    }
+
+    /**
+     * Decode an encoded image read from a stream, such as received bytes, without closing the stream
+     */
+    public GrayscaleImage decode(InputStream input, int targetWidth, int targetHeight) throws IOException {
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(input)) {
+            if (inputStream == null)
+                throw new IOException("Can not read image stream");
+            return decode(inputStream, targetWidth, targetHeight);
+        }
+    }
+
+    private GrayscaleImage decode(ImageInputStream inputStream, int targetWidth, int targetHeight) throws IOException {
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+        if (!readers.hasNext())
+            throw new IOException("unsupported image format");
+        final ImageReader reader = readers.next();
+        try {
+            reader.setInput(inputStream, false, true);
+            return decode(reader, targetWidth, targetHeight);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private GrayscaleImage decode(ImageReader reader, int targetWidth, int targetHeight) throws IOException {
+        final int imageWidth = reader.getWidth(0);
+        final int imageHeight = reader.getHeight(0);
+        final int subsampling = subsampling(imageWidth, imageHeight, targetWidth, targetHeight);
+        final int width = (imageWidth + subsampling - 1) / subsampling;
+        final int height = (imageHeight + subsampling - 1) / subsampling;
+
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        if ((long) width * height <= maxRegionPixels || !(reader.isRandomAccessEasy(0) || reader.isImageTiled(0)))
+            return GrayscaleImage.from(read(reader, param), format, direct, parallel, colors);
+
+        // strips of whole subsampled rows, aligned on the subsampling grid
+        final GrayscaleImage grayscaleImage = GrayscaleImage.create(width, height, format, direct, colors);
+        final int stripRows = (int) Math.min(imageHeight, Math.max(1, maxRegionPixels / width) * subsampling);
+        for (int y = 0; y < imageHeight; y += stripRows) {
+            param.setSourceRegion(new Rectangle(0, y, imageWidth, Math.min(stripRows, imageHeight - y)));
+            final BufferedImage strip = read(reader, param);
+            grayscaleImage.read(strip, y / subsampling, parallel);
+        }
+        return grayscaleImage;
+    }
+
+    private static BufferedImage read(ImageReader reader, ImageReadParam param) throws IOException {
+        final StageEvent event = StageEvent.start(Stage.DECODE);
+        final BufferedImage image = reader.read(0, param);
+        event.end((long) image.getWidth() * image.getHeight(), 0);
+        return image;
+    }
+
+    /**
+     * @return the source subsampling, same on both axis to keep the image aspect ratio
+     */
+    public int subsampling(int imageWidth, int imageHeight, int targetWidth, int targetHeight) {
+        final CharactersLayout layout = generator.layout(imageWidth, imageHeight, targetWidth, targetHeight);
+        final int subsamplingX = imageWidth / (Math.max(1, layout.getWidth()) * columns * SAMPLES_PER_CHARACTER);
+        final int subsamplingY = imageHeight / (Math.max(1, layout.getHeight()) * rows * SAMPLES_PER_CHARACTER);
+        return Math.max(1, Math.min(subsamplingX, subsamplingY));
+    }
+}
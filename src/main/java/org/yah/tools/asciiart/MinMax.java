@@ -13,6 +13,14 @@ public class MinMax {
         this.max = max;
     }
 
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
     public float lerp(float v) {
         return (v - min) / (max - min);
     }
@@ -34,11 +42,28 @@ public class MinMax {
             return this;
         }
 
+        /**
+         * Merge another builder values
+         */
+        public Builder add(Builder other) {
+            return add(other.min, other.max);
+        }
+
+        /**
+         * Merge the min and max of other values
+         */
+        Builder add(float min, float max) {
+            if (min < this.min)
+                this.min = min;
+            if (max > this.max)
+                this.max = max;
+            return this;
+        }
+
         public Builder add(float[][] values) {
+            final PixelKernels kernels = PixelKernels.get();
             for (float[] row : values) {
-                for (float value : row) {
-                    add(value);
-                }
+                kernels.minMax(row, 0, row.length, this);
             }
             return this;
         }
@@ -0,0 +1,107 @@
+package org.yah.tools.asciiart;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Split a range of rows into fork-join tasks of about {@link #TASK_CELLS} cells.
+ */
+final class ParallelRows {
+
+    /**
+     * Minimum number of cells (pixels or characters) processed by a task
+     */
+    static final int TASK_CELLS = 1 << 16;
+
+    @FunctionalInterface
+    interface Rows {
+        void process(int fromRow, int toRow);
+    }
+
+    @FunctionalInterface
+    interface RowsReduction<T> {
+        T process(int fromRow, int toRow);
+    }
+
+    private ParallelRows() {
+    }
+
+    /**
+     * Process rows [0, rows[, in the calling thread if not parallel
+     */
+    static void forEach(boolean parallel, int rows, int rowCells, Rows task) {
+        final int grain = grain(rowCells);
+        if (!parallel || rows <= grain)
+            task.process(0, rows);
+        else
+            ForkJoinPool.commonPool().invoke(new RowsAction(task, 0, rows, grain));
+    }
+
+    /**
+     * Process rows [0, rows[ and combine the results of each range, in rows order
+     */
+    static <T> T reduce(boolean parallel, int rows, int rowCells, RowsReduction<T> task, BinaryOperator<T> combiner) {
+        final int grain = grain(rowCells);
+        if (!parallel || rows <= grain)
+            return task.process(0, rows);
+        return ForkJoinPool.commonPool().invoke(new RowsReductionTask<>(task, combiner, 0, rows, grain));
+    }
+
+    private static int grain(int rowCells) {
+        return Math.max(1, TASK_CELLS / Math.max(1, rowCells));
+    }
+
+    private static final class RowsAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Rows task;
+        private final int from, to, grain;
+
+        private RowsAction(Rows task, int from, int to, int grain) {
+            this.task = task;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.process(from, to);
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new RowsAction(task, from, mid, grain), new RowsAction(task, mid, to, grain));
+            }
+        }
+    }
+
+    private static final class RowsReductionTask<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final RowsReduction<T> task;
+        private final BinaryOperator<T> combiner;
+        private final int from, to, grain;
+
+        private RowsReductionTask(RowsReduction<T> task, BinaryOperator<T> combiner, int from, int to, int grain) {
+            this.task = task;
+            this.combiner = combiner;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from <= grain)
+                return task.process(from, to);
+            final int mid = (from + to) >>> 1;
+            final RowsReductionTask<T> low = new RowsReductionTask<>(task, combiner, from, mid, grain);
+            final RowsReductionTask<T> high = new RowsReductionTask<>(task, combiner, mid, to, grain);
+            high.fork();
+            final T lowResult = low.compute();
+            return combiner.apply(lowResult, high.join());
+        }
+    }
+}
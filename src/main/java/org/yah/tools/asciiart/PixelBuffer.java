@@ -0,0 +1,274 @@
+package org.yah.tools.asciiart;
+
+import org.yah.tools.asciiart.GrayscaleImage.PixelFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flat, row-major storage of grayscale pixels.
+ */
+abstract class PixelBuffer {
+
+    static PixelBuffer allocate(PixelFormat format, int size, boolean direct) {
+        if (direct) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(size * format.bytes).order(ByteOrder.nativeOrder());
+            switch (format) {
+                case FLOAT:
+                    return new DirectFloatBuffer(buffer, size);
+                case SHORT:
+                    return new DirectShortBuffer(buffer, size);
+                case BYTE:
+                    return new DirectByteBuffer(buffer, size);
+            }
+        } else {
+            switch (format) {
+                case FLOAT:
+                    return new FloatArray(new float[size]);
+                case SHORT:
+                    return new ShortArray(new short[size]);
+                case BYTE:
+                    return new ByteArray(new byte[size]);
+            }
+        }
+        throw new IllegalArgumentException("Unhandled format " + format);
+    }
+
+    private final int size;
+
+    private PixelBuffer(int size) {
+        this.size = size;
+    }
+
+    final int size() {
+        return size;
+    }
+
+    abstract PixelFormat format();
+
+    abstract float get(int index);
+
+    /**
+     * @return the stored value, after quantization
+     */
+    abstract float set(int index, float value);
+
+    /**
+     * @return the backing array of on-heap float pixels, for {@link PixelKernels}, null for other storages
+     */
+    float[] array() {
+        return null;
+    }
+
+    /**
+     * Apply {@link MinMax#lerp(float)} to the pixels [from, to[
+     */
+    void lerp(int from, int to, MinMax minMax) {
+        for (int i = from; i < to; i++) {
+            set(i, minMax.lerp(get(i)));
+        }
+    }
+
+    /**
+     * Invert the pixels [from, to[
+     */
+    void invert(int from, int to) {
+        for (int i = from; i < to; i++) {
+            set(i, 1f - get(i));
+        }
+    }
+
+    /**
+     * Add the pixels [from, to[ to a min max
+     */
+    void minMax(int from, int to, MinMax.Builder minMax) {
+        for (int i = from; i < to; i++) {
+            minMax.add(get(i));
+        }
+    }
+
+    private static int quantize(float value, int max) {
+        if (!(value > 0))
+            return 0;
+        if (value >= 1)
+            return max;
+        return (int) (value * max + 0.5f);
+    }
+
+    private static final int SHORT_MAX = 0xFFFF;
+    private static final int BYTE_MAX = 0xFF;
+
+    private static final class FloatArray extends PixelBuffer {
+        private final float[] pixels;
+
+        private FloatArray(float[] pixels) {
+            super(pixels.length);
+            this.pixels = pixels;
+        }
+
+        @Override
+        PixelFormat format() {
+            return PixelFormat.FLOAT;
+        }
+
+        @Override
+        float get(int index) {
+            return pixels[index];
+        }
+
+        @Override
+        float set(int index, float value) {
+            pixels[index] = value;
+            return value;
+        }
+
+        @Override
+        float[] array() {
+            return pixels;
+        }
+
+        @Override
+        void lerp(int from, int to, MinMax minMax) {
+            PixelKernels.get().lerp(pixels, from, to, minMax.getMin(), minMax.getMax());
+        }
+
+        @Override
+        void invert(int from, int to) {
+            PixelKernels.get().invert(pixels, from, to);
+        }
+
+        @Override
+        void minMax(int from, int to, MinMax.Builder minMax) {
+            PixelKernels.get().minMax(pixels, from, to, minMax);
+        }
+    }
+
+    private static final class ShortArray extends PixelBuffer {
+        private final short[] pixels;
+
+        private ShortArray(short[] pixels) {
+            super(pixels.length);
+            this.pixels = pixels;
+        }
+
+        @Override
+        PixelFormat format() {
+            return PixelFormat.SHORT;
+        }
+
+        @Override
+        float get(int index) {
+            return (pixels[index] & SHORT_MAX) / (float) SHORT_MAX;
+        }
+
+        @Override
+        float set(int index, float value) {
+            final int quantized = quantize(value, SHORT_MAX);
+            pixels[index] = (short) quantized;
+            return quantized / (float) SHORT_MAX;
+        }
+    }
+
+    private static final class ByteArray extends PixelBuffer {
+        private final byte[] pixels;
+
+        private ByteArray(byte[] pixels) {
+            super(pixels.length);
+            this.pixels = pixels;
+        }
+
+        @Override
+        PixelFormat format() {
+            return PixelFormat.BYTE;
+        }
+
+        @Override
+        float get(int index) {
+            return (pixels[index] & BYTE_MAX) / (float) BYTE_MAX;
+        }
+
+        @Override
+        float set(int index, float value) {
+            final int quantized = quantize(value, BYTE_MAX);
+            pixels[index] = (byte) quantized;
+            return quantized / (float) BYTE_MAX;
+        }
+    }
+
+    private static final class DirectFloatBuffer extends PixelBuffer {
+        private final ByteBuffer buffer;
+
+        private DirectFloatBuffer(ByteBuffer buffer, int size) {
+            super(size);
+            this.buffer = buffer;
+        }
+
+        @Override
+        PixelFormat format() {
+            return PixelFormat.FLOAT;
+        }
+
+        @Override
+        float get(int index) {
+            return buffer.getFloat(index << 2);
+        }
+
+        @Override
+        float set(int index, float value) {
+            buffer.putFloat(index << 2, value);
+            return value;
+        }
+    }
+
+    private static final class DirectShortBuffer extends PixelBuffer {
+        private final ByteBuffer buffer;
+
+        private DirectShortBuffer(ByteBuffer buffer, int size) {
+            super(size);
+            this.buffer = buffer;
+        }
+
+        @Override
+        PixelFormat format() {
+            return PixelFormat.SHORT;
+        }
+
+        @Override
+        float get(int index) {
+            return (buffer.getShort(index << 1) & SHORT_MAX) / (float) SHORT_MAX;
+        }
+
+        @Override
+        float set(int index, float value) {
+            final int quantized = quantize(value, SHORT_MAX);
+            buffer.putShort(index << 1, (short) quantized);
+            return quantized / (float) SHORT_MAX;
+        }
+    }
+
+    private static final class DirectByteBuffer extends PixelBuffer {
+        private final ByteBuffer buffer;
+
+        private DirectByteBuffer(ByteBuffer buffer, int size) {
+            super(size);
+            this.buffer = buffer;
+        }
+
+        @Override
+        PixelFormat format() {
+            return PixelFormat.BYTE;
+        }
+
+        @Override
+        float get(int index) {
+            return (buffer.get(index) & BYTE_MAX) / (float) BYTE_MAX;
+        }
+
+        @Override
+        float set(int index, float value) {
+            final int quantized = quantize(value, BYTE_MAX);
+            buffer.put(index, (byte) quantized);
+            return quantized / (float) BYTE_MAX;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.yah.tools.asciiart;
+
+/**
+ * Per pixel loops of the grayscale conversion and transforms, on float pixels arrays.<br/>
+ * On Java 17 and later, started with {@code --add-modules jdk.incubator.vector}, the Java 17 layer of the
+ * multi-release jar provides vectorized kernels, producing the same values than these scalar loops. Set the
+ * {@value #VECTOR_PROPERTY} system property to false to use the scalar loops anyway.
+ */
+class PixelKernels {
+
+    static final String VECTOR_PROPERTY = "org.yah.tools.asciiart.vector";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * Only in the Java 17 layer of the multi-release jar
+     */
+    private static final String VECTOR_KERNELS = "org.yah.tools.asciiart.VectorPixelKernels";
+
+    private static final PixelKernels INSTANCE = create();
+
+    static PixelKernels get() {
+        return INSTANCE;
+    }
+
+    private static PixelKernels create() {
+        if (!Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY, "true"))
+                || ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty())
+            return new PixelKernels();
+        try {
+            return (PixelKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // older runtime, or not running from the jar
+            return new PixelKernels();
+        }
+    }
+
+    PixelKernels() {
+    }
+
+    /**
+     * @return "scalar", or the vector size of the vectorized kernels
+     */
+    String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Convert length ARGB pixels with {@link GrayscaleImage#gray(int)}
+     *
+     * @param alphaMask or-ed to each pixel, 0xFF000000 for opaque images
+     * @param colors    if not null, receive the 0xRRGGBB color of each pixel, starting at offset
+     */
+    void gray(int[] argb, int argbOffset, int alphaMask, float[] pixels, int[] colors, int offset, int length,
+              MinMax.Builder minMax) {
+        for (int i = 0; i < length; i++) {
+            final int pixel = argb[argbOffset + i] | alphaMask;
+            if (colors != null)
+                colors[offset + i] = pixel & 0xFFFFFF;
+            final float gray = GrayscaleImage.gray(pixel);
+            pixels[offset + i] = gray;
+            minMax.add(gray);
+        }
+    }
+
+    /**
+     * Convert a row of interleaved 8 bits samples with {@link GrayscaleImage#gray(int)}
+     *
+     * @param alphaOffset offset of the alpha sample in a pixel, -1 if opaque
+     */
+    void gray(byte[] data, int dataOffset, int pixelStride, int redOffset, int greenOffset, int blueOffset,
+              int alphaOffset, float[] pixels, int[] colors, int offset, int length, MinMax.Builder minMax) {
+        int index = dataOffset;
+        for (int i = 0; i < length; i++) {
+            final int argb = argb(data, index, redOffset, greenOffset, blueOffset, alphaOffset);
+            if (colors != null)
+                colors[offset + i] = argb & 0xFFFFFF;
+            final float gray = GrayscaleImage.gray(argb);
+            pixels[offset + i] = gray;
+            minMax.add(gray);
+            index += pixelStride;
+        }
+    }
+
+    static int argb(byte[] data, int index, int redOffset, int greenOffset, int blueOffset, int alphaOffset) {
+        final int alpha = alphaOffset < 0 ? 0xFF : data[index + alphaOffset] & 0xFF;
+        return alpha << 24
+                | (data[index + redOffset] & 0xFF) << 16
+                | (data[index + greenOffset] & 0xFF) << 8
+                | data[index + blueOffset] & 0xFF;
+    }
+
+    /**
+     * pixels[i] = (pixels[i] - min) / (max - min), see {@link MinMax#lerp(float)}
+     */
+    void lerp(float[] pixels, int from, int to, float min, float max) {
+        for (int i = from; i < to; i++) {
+            pixels[i] = (pixels[i] - min) / (max - min);
+        }
+    }
+
+    /**
+     * pixels[i] = 1 - pixels[i]
+     */
+    void invert(float[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            pixels[i] = 1f - pixels[i];
+        }
+    }
+
+    void minMax(float[] pixels, int from, int to, MinMax.Builder minMax) {
+        for (int i = from; i < to; i++) {
+            minMax.add(pixels[i]);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.yah.tools.asciiart;
+
+import java.awt.image.*;
+
+/**
+ * Convert rows of a {@link BufferedImage} to grayscale pixels, reading the backing arrays directly for the common
+ * raster layouts, and falling back to {@link BufferedImage#getRGB} for the others.<br/>
+ * All readers produce the same values than {@link GrayscaleImage#gray(int)} applied to the image ARGB pixels.
+ */
+abstract class RasterReader {
+
+    static RasterReader create(BufferedImage image) {
+        final WritableRaster raster = image.getRaster();
+        final SampleModel sampleModel = raster.getSampleModel();
+        final DataBuffer dataBuffer = raster.getDataBuffer();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB:
+                if (dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel)
+                    return new IntRasterReader(image);
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                if (dataBuffer instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel)
+                    return new ByteRasterReader(image);
+                break;
+            case BufferedImage.TYPE_BYTE_GRAY:
+            case BufferedImage.TYPE_BYTE_INDEXED:
+                if (dataBuffer instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel)
+                    return new LookupRasterReader(image);
+                break;
+            case BufferedImage.TYPE_CUSTOM:
+                if (dataBuffer instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel
+                        && isOpaqueByteRGB(image.getColorModel()))
+                    return new ByteRasterReader(image);
+                break;
+        }
+        return new RGBRasterReader(image);
+    }
+
+    /**
+     * 8 bits sRGB components without alpha, in any bands order (RGB interleaved raw frames)
+     */
+    private static boolean isOpaqueByteRGB(ColorModel colorModel) {
+        if (!(colorModel instanceof ComponentColorModel) || colorModel.hasAlpha()
+                || !colorModel.getColorSpace().isCS_sRGB() || colorModel.getNumComponents() != 3)
+            return false;
+        for (int size : colorModel.getComponentSize()) {
+            if (size != 8)
+                return false;
+        }
+        return true;
+    }
+
+    protected final BufferedImage image;
+    protected final int width;
+
+    private RasterReader(BufferedImage image) {
+        this.image = image;
+        this.width = image.getWidth();
+    }
+
+    /**
+     * Convert image rows [minY, maxY[ to pixels, starting at pixels index offset
+     *
+     * @param colors if not null, receive the 0xRRGGBB color of each pixel, starting at offset
+     * @return the min and max of the stored pixels
+     */
+    abstract MinMax.Builder read(int minY, int maxY, PixelBuffer pixels, int[] colors, int offset);
+
+    /**
+     * Fallback using {@link BufferedImage#getRGB}, one row at a time
+     */
+    private static final class RGBRasterReader extends RasterReader {
+        private RGBRasterReader(BufferedImage image) {
+            super(image);
+        }
+
+        @Override
+        MinMax.Builder read(int minY, int maxY, PixelBuffer pixels, int[] colors, int offset) {
+            final MinMax.Builder minMax = MinMax.builder();
+            final int[] colorPixels = new int[width];
+            for (int y = minY; y < maxY; y++) {
+                image.getRGB(0, y, width, 1, colorPixels, 0, width);
+                for (int x = 0; x < width; x++) {
+                    if (colors != null)
+                        colors[offset] = colorPixels[x] & 0xFFFFFF;
+                    minMax.add(pixels.set(offset++, GrayscaleImage.gray(colorPixels[x])));
+                }
+            }
+            return minMax;
+        }
+    }
+
+    /**
+     * TYPE_INT_ARGB and TYPE_INT_RGB
+     */
+    private static final class IntRasterReader extends RasterReader {
+        private final int[] data;
+        private final int dataOffset;
+        private final int scanlineStride;
+        private final int alphaMask;
+
+        private IntRasterReader(BufferedImage image) {
+            super(image);
+            final WritableRaster raster = image.getRaster();
+            final SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            final DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+            data = dataBuffer.getData();
+            scanlineStride = sampleModel.getScanlineStride();
+            dataOffset = dataBuffer.getOffset()
+                    - raster.getSampleModelTranslateY() * scanlineStride
+                    - raster.getSampleModelTranslateX();
+            alphaMask = image.getColorModel().hasAlpha() ? 0 : 0xFF000000;
+        }
+
+        @Override
+        MinMax.Builder read(int minY, int maxY, PixelBuffer pixels, int[] colors, int offset) {
+            final MinMax.Builder minMax = MinMax.builder();
+            final float[] array = pixels.array();
+            if (array != null) {
+                final PixelKernels kernels = PixelKernels.get();
+                for (int y = minY; y < maxY; y++, offset += width) {
+                    kernels.gray(data, dataOffset + y * scanlineStride, alphaMask, array, colors, offset, width,
+                            minMax);
+                }
+                return minMax;
+            }
+            for (int y = minY; y < maxY; y++) {
+                int index = dataOffset + y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    final int argb = data[index++] | alphaMask;
+                    if (colors != null)
+                        colors[offset] = argb & 0xFFFFFF;
+                    minMax.add(pixels.set(offset++, GrayscaleImage.gray(argb)));
+                }
+            }
+            return minMax;
+        }
+    }
+
+    /**
+     * TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR and interleaved opaque RGB bytes
+     */
+    private static final class ByteRasterReader extends RasterReader {
+        private final byte[] data;
+        private final int dataOffset;
+        private final int scanlineStride;
+        private final int pixelStride;
+        private final int redOffset, greenOffset, blueOffset, alphaOffset;
+
+        private ByteRasterReader(BufferedImage image) {
+            super(image);
+            final WritableRaster raster = image.getRaster();
+            final PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+            final DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+            data = dataBuffer.getData();
+            scanlineStride = sampleModel.getScanlineStride();
+            pixelStride = sampleModel.getPixelStride();
+            dataOffset = dataBuffer.getOffset()
+                    - raster.getSampleModelTranslateY() * scanlineStride
+                    - raster.getSampleModelTranslateX() * pixelStride;
+            final int[] bandOffsets = sampleModel.getBandOffsets();
+            redOffset = bandOffsets[0];
+            greenOffset = bandOffsets[1];
+            blueOffset = bandOffsets[2];
+            alphaOffset = bandOffsets.length > 3 ? bandOffsets[3] : -1;
+        }
+
+        @Override
+        MinMax.Builder read(int minY, int maxY, PixelBuffer pixels, int[] colors, int offset) {
+            final MinMax.Builder minMax = MinMax.builder();
+            final float[] array = pixels.array();
+            if (array != null) {
+                final PixelKernels kernels = PixelKernels.get();
+                for (int y = minY; y < maxY; y++, offset += width) {
+                    kernels.gray(data, dataOffset + y * scanlineStride, pixelStride, redOffset, greenOffset,
+                            blueOffset, alphaOffset, array, colors, offset, width, minMax);
+                }
+                return minMax;
+            }
+            for (int y = minY; y < maxY; y++) {
+                int index = dataOffset + y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    final int argb = PixelKernels.argb(data, index, redOffset, greenOffset, blueOffset, alphaOffset);
+                    if (colors != null)
+                        colors[offset] = argb & 0xFFFFFF;
+                    minMax.add(pixels.set(offset++, GrayscaleImage.gray(argb)));
+                    index += pixelStride;
+                }
+            }
+            return minMax;
+        }
+    }
+
+    /**
+     * TYPE_BYTE_GRAY and TYPE_BYTE_INDEXED: every possible sample is converted once through the color model
+     */
+    private static final class LookupRasterReader extends RasterReader {
+        private final byte[] data;
+        private final int dataOffset;
+        private final int scanlineStride;
+        private final int pixelStride;
+        private final float[] lookup = new float[256];
+        private final int[] colorLookup = new int[256];
+
+        private LookupRasterReader(BufferedImage image) {
+            super(image);
+            final WritableRaster raster = image.getRaster();
+            final PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+            final DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+            data = dataBuffer.getData();
+            scanlineStride = sampleModel.getScanlineStride();
+            pixelStride = sampleModel.getPixelStride();
+            dataOffset = dataBuffer.getOffset()
+                    - raster.getSampleModelTranslateY() * scanlineStride
+                    - raster.getSampleModelTranslateX() * pixelStride
+                    + sampleModel.getBandOffsets()[0];
+            final ColorModel colorModel = image.getColorModel();
+            final byte[] sample = new byte[1];
+            for (int i = 0; i < lookup.length; i++) {
+                sample[0] = (byte) i;
+                final int argb = colorModel.getRGB(sample);
+                lookup[i] = GrayscaleImage.gray(argb);
+                colorLookup[i] = argb & 0xFFFFFF;
+            }
+        }
+
+        @Override
+        MinMax.Builder read(int minY, int maxY, PixelBuffer pixels, int[] colors, int offset) {
+            final MinMax.Builder minMax = MinMax.builder();
+            for (int y = minY; y < maxY; y++) {
+                int index = dataOffset + y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    final int sample = data[index] & 0xFF;
+                    if (colors != null)
+                        colors[offset] = colorLookup[sample];
+                    minMax.add(pixels.set(offset++, lookup[sample]));
+                    index += pixelStride;
+                }
+            }
+            return minMax;
+        }
+    }
+
+}
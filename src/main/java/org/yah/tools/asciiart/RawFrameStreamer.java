@@ -0,0 +1,298 @@
+package org.yah.tools.asciiart;
+
+import org.yah.tools.asciiart.GrayscaleImage.PixelFormat;
+
+import java.awt.*;
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Render fixed size raw frames read from a stream, such as ffmpeg rawvideo output, as ASCII art frames written to a
+ * terminal at a target frame rate.<br/>
+ * A reader thread fills a back buffer while the front frame is converted. A complete frame still waiting for the
+ * converter is replaced by the next one, so a slow conversion drops frames instead of blocking the input. All
+ * frame buffers are allocated once, frames are generated through one {@link GenerationContext} reusing its sampling
+ * state from frame to frame.
+ */
+public class RawFrameStreamer {
+
+    public enum Format {
+        /**
+         * 1 byte per pixel
+         */
+        GRAY8(1),
+        /**
+         * 3 bytes per pixel: red, green, blue
+         */
+        RGB24(3);
+
+        final int bytes;
+
+        Format(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public static final double DEFAULT_FPS = 30;
+
+    private static final char[] CLEAR_SCREEN = "\033[2J".toCharArray();
+    private static final char[] CURSOR_HOME = "\033[H".toCharArray();
+
+    private final AsciiArtGenerator generator;
+    private final Format format;
+    private final int width;
+    private final int height;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final int flags;
+    private final double fps;
+    private final String lineSeparator;
+
+    /**
+     * @param width  input frames width in pixels
+     * @param height input frames height in pixels
+     * @param fps    maximum number of rendered frames per second, 0 to render frames as they come
+     */
+    public RawFrameStreamer(AsciiArtGenerator generator,
+                            Format format,
+                            int width,
+                            int height,
+                            int targetWidth,
+                            int targetHeight,
+                            int flags,
+                            double fps,
+                            String lineSeparator) {
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("Invalid frame size " + width + "x" + height);
+        if (!(fps >= 0))
+            throw new IllegalArgumentException("Invalid fps " + fps);
+        this.generator = Objects.requireNonNull(generator, "generator is null");
+        this.format = Objects.requireNonNull(format, "format is null");
+        this.width = width;
+        this.height = height;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+        this.flags = flags;
+        this.fps = fps;
+        this.lineSeparator = Objects.requireNonNull(lineSeparator, "lineSeparator is null");
+    }
+
+    /**
+     * Render frames until the end of input
+     */
+    public Report run(InputStream input, WritableByteChannel output) throws IOException, InterruptedException {
+        final FrameExchange exchange = new FrameExchange();
+        final boolean parallel = (flags & AsciiArtGenerator.PARALLEL) != 0;
+        final AnsiColorWriter.Mode colorMode = AsciiArtGenerator.colorMode(flags);
+        final GrayscaleImage grayscaleImage = GrayscaleImage.create(width, height, PixelFormat.FLOAT, false,
+                colorMode != null);
+        final GenerationContext context = new GenerationContext();
+        final CharactersLayout layout = context.layout(generator, width, height, targetWidth, targetHeight);
+        final char[][] chars = context.characters(layout);
+        final int[][] colors = colorMode != null ? context.colors(layout) : null;
+        final int frameChars = CURSOR_HOME.length
+                + layout.getHeight() * (layout.getMargin() + layout.getWidth() + lineSeparator.length());
+        // a frame is written at once
+        final CharactersWriter writer = new CharactersWriter(output, lineSeparator,
+                Math.max(CharactersWriter.DEFAULT_BUFFER_SIZE, frameChars * 3));
+        final AnsiColorWriter colorWriter = colorMode != null ? new AnsiColorWriter(writer, colorMode) : null;
+
+        final Thread readerThread = new Thread(() -> exchange.read(input), "ascii-art-stream-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        final Report report = new Report();
+        writer.write(CLEAR_SCREEN, 0, CLEAR_SCREEN.length);
+        final long period = fps > 0 ? (long) (1E9 / fps) : 0;
+        long nextFrame = System.nanoTime();
+        FrameBuffer frame;
+        while (true) {
+            if (period > 0) {
+                long now;
+                while ((now = System.nanoTime()) < nextFrame) {
+                    LockSupport.parkNanos(nextFrame - now);
+                }
+                // do not try to catch up after a stall
+                nextFrame = Math.max(nextFrame + period, now);
+            }
+            frame = exchange.take();
+            if (frame == null)
+                break;
+            final long start = System.nanoTime();
+            grayscaleImage.read(frame.reader, height, 0, parallel);
+            generator.generate(grayscaleImage, targetWidth, targetHeight, flags, context, chars, colors);
+            writer.write(CURSOR_HOME, 0, CURSOR_HOME.length);
+            for (int y = 0; y < layout.getHeight(); y++) {
+                if (colorWriter != null)
+                    colorWriter.writeRow(chars[y], colors[y], 0, layout.getWidth(), layout.getMargin());
+                else
+                    writer.writeRow(chars[y], 0, layout.getWidth(), layout.getMargin());
+            }
+            writer.flush();
+            final long end = System.nanoTime();
+            report.latency.record(end - frame.arrival);
+            report.conversion.record(end - start);
+        }
+        if (colorWriter != null) {
+            colorWriter.reset();
+            writer.flush();
+        }
+        report.complete(exchange.dropped);
+        exchange.rethrow();
+        return report;
+    }
+
+    private final class FrameBuffer {
+        private final byte[] data;
+        private final RasterReader reader;
+        private long arrival;
+
+        private FrameBuffer() {
+            final BufferedImage image;
+            if (format == Format.GRAY8) {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            } else {
+                final WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height,
+                        width * 3, 3, new int[]{0, 1, 2}, null);
+                final ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                        false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+                image = new BufferedImage(colorModel, raster, false, null);
+            }
+            data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            reader = RasterReader.create(image);
+        }
+
+        /**
+         * @return false at the end of input, a truncated last frame is ignored
+         */
+        private boolean readFrom(InputStream input) throws IOException {
+            int offset = 0;
+            while (offset < data.length) {
+                final int read = input.read(data, offset, data.length - offset);
+                if (read < 0)
+                    return false;
+                offset += read;
+            }
+            arrival = System.nanoTime();
+            return true;
+        }
+    }
+
+    /**
+     * Three frame buffers: back (read), ready (complete, waiting for the converter) and front (converted)
+     */
+    private final class FrameExchange {
+        private final FrameBuffer[] buffers = {new FrameBuffer(), new FrameBuffer(), new FrameBuffer()};
+        private FrameBuffer ready;
+        private FrameBuffer front;
+        private boolean end;
+        private IOException error;
+        private long dropped;
+
+        private void read(InputStream input) {
+            FrameBuffer back = buffers[0];
+            try {
+                while (back.readFrom(input)) {
+                    synchronized (this) {
+                        final FrameBuffer completed = back;
+                        if (ready != null) {
+                            dropped++;
+                            back = ready;
+                        } else {
+                            back = free(completed);
+                        }
+                        ready = completed;
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    error = e;
+                }
+            } finally {
+                synchronized (this) {
+                    end = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * @return the latest complete frame, or null at the end of input
+         */
+        private synchronized FrameBuffer take() throws InterruptedException {
+            while (ready == null && !end) {
+                wait();
+            }
+            front = ready;
+            ready = null;
+            return front;
+        }
+
+        private synchronized void rethrow() throws IOException {
+            if (error != null)
+                throw error;
+        }
+
+        private FrameBuffer free(FrameBuffer completed) {
+            for (FrameBuffer buffer : buffers) {
+                if (buffer != completed && buffer != front)
+                    return buffer;
+            }
+            throw new IllegalStateException("no free frame buffer");
+        }
+    }
+
+    public static final class Report {
+        private final long startTime = System.nanoTime();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram conversion = new LatencyHistogram();
+        private long elapsed;
+        private long dropped;
+
+        private void complete(long dropped) {
+            this.elapsed = System.nanoTime() - startTime;
+            this.dropped = dropped;
+        }
+
+        public long getFrames() {
+            return latency.getCount();
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getElapsedNanos() {
+            return elapsed;
+        }
+
+        /**
+         * @return time from a frame fully read to its characters written
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return time from a frame taken by the converter to its characters written
+         */
+        public LatencyHistogram getConversion() {
+            return conversion;
+        }
+
+        public void print(PrintStream out) {
+            final double seconds = elapsed / 1E9;
+            out.printf("Rendered %d frames (%d dropped) in %.2fs: %.1f fps%n",
+                    getFrames(), dropped, seconds, getFrames() / seconds);
+            out.println("Latency:    " + latency.toMillisString());
+            out.println("Conversion: " + conversion.toMillisString());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.yah.tools.asciiart;
+
+import jdk.jfr.*;
+import org.yah.tools.asciiart.ConversionStats.Stage;
+
+/**
+ * JFR event of a conversion stage, also recorded in the current {@link ConversionStats}.<br/>
+ * Without JFR recording nor stats recording, a stage returns a shared idle event and costs no allocation.
+ */
+@Category("ASCII Art")
+@StackTrace(false)
+abstract class StageEvent extends Event {
+
+    static StageEvent start(Stage stage) {
+        final ConversionStats stats = ConversionStats.recording();
+        final StageEvent idle = stage.idleEvent();
+        if (stats == null && !idle.isEnabled())
+            return idle;
+        final StageEvent event = stage.newEvent();
+        event.stage = stage;
+        event.stats = stats;
+        if (stats != null)
+            event.start = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    /**
+     * null for the idle events
+     */
+    private transient Stage stage;
+    private transient ConversionStats stats;
+    private transient long start;
+
+    /**
+     * @param pixels number of pixels processed by the stage
+     * @param bytes  number of bytes written by the stage
+     */
+    void end(long pixels, long bytes) {
+        if (stage == null)
+            return;
+        this.pixels = pixels;
+        this.bytes = bytes;
+        commit();
+        if (stats != null)
+            stats.record(stage, System.nanoTime() - start, pixels, bytes);
+    }
+
+    @Name("org.yah.tools.asciiart.Decode")
+    @Label("Decode")
+    @Description("Image file decoding")
+    static final class Decode extends StageEvent {
+    }
+
+    @Name("org.yah.tools.asciiart.Grayscale")
+    @Label("Grayscale")
+    @Description("Decoded image conversion to grayscale")
+    static final class Grayscale extends StageEvent {
+    }
+
+    @Name("org.yah.tools.asciiart.Transform")
+    @Label("Transform")
+    @Description("Grayscale normalization or inversion")
+    static final class Transform extends StageEvent {
+    }
+
+    @Name("org.yah.tools.asciiart.Sample")
+    @Label("Sample")
+    @Description("Characters selection")
+    static final class Sample extends StageEvent {
+    }
+
+    @Name("org.yah.tools.asciiart.Write")
+    @Label("Write")
+    @Description("Characters image file writing")
+    static final class Write extends StageEvent {
+    }
+}
@@ -0,0 +1,67 @@
+package org.yah.tools.asciiart;
+
+/**
+ * Render each character cell as a grid of on/off sub cells, mapped to a unicode character by a bitmask lookup
+ * table.<br/>
+ * Sub cell (x, y) is bit y * columns + x of the mask.
+ */
+public enum SubCellMode {
+    /**
+     * 2x2 unicode quadrant block elements
+     */
+    QUADRANT(2, 2, quadrantTable()),
+    /**
+     * 2x4 unicode braille patterns
+     */
+    BRAILLE(2, 4, brailleTable());
+
+    private final int columns;
+    private final int rows;
+    private final char[] characters;
+
+    SubCellMode(int columns, int rows, char[] characters) {
+        this.columns = columns;
+        this.rows = rows;
+        this.characters = characters;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param mask the bits of the sub cells that are on
+     */
+    public char get(int mask) {
+        return characters[mask];
+    }
+
+    private static char[] quadrantTable() {
+        // upper left, upper right, lower left, lower right
+        return new char[]{
+                ' ', '▘', '▝', '▀',
+                '▖', '▌', '▞', '▛',
+                '▗', '▚', '▐', '▜',
+                '▄', '▙', '▟', '█'
+        };
+    }
+
+    private static char[] brailleTable() {
+        // braille dot bit of each sub cell, row by row
+        final int[] dots = {0, 3, 1, 4, 2, 5, 6, 7};
+        final char[] characters = new char[256];
+        for (int mask = 0; mask < characters.length; mask++) {
+            int pattern = 0;
+            for (int i = 0; i < dots.length; i++) {
+                if ((mask & (1 << i)) != 0)
+                    pattern |= 1 << dots[i];
+            }
+            characters[mask] = (char) (0x2800 + pattern);
+        }
+        return characters;
+    }
+}
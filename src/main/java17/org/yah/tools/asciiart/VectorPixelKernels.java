@@ -0,0 +1,176 @@
+package org.yah.tools.asciiart;
+
+import jdk.incubator.vector.*;
+
+/**
+ * {@link PixelKernels} using the preferred vector size of the platform. Each range is processed by whole vectors,
+ * the remaining pixels by the scalar loops. Operations are the same than the scalar loops, in the same order, so the
+ * results are identical.
+ */
+final class VectorPixelKernels extends PixelKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, FLOATS.vectorShape());
+
+    /**
+     * Last interleaved samples layout, most images of a run share it
+     */
+    private volatile ByteLayout byteLayout;
+
+    @Override
+    String getName() {
+        return "vector " + FLOATS.vectorBitSize() + " bits";
+    }
+
+    @Override
+    void gray(int[] argb, int argbOffset, int alphaMask, float[] pixels, int[] colors, int offset, int length,
+              MinMax.Builder minMax) {
+        final int bound = INTS.loopBound(length);
+        FloatVector min = FloatVector.broadcast(FLOATS, Float.POSITIVE_INFINITY);
+        FloatVector max = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+        for (int i = 0; i < bound; i += INTS.length()) {
+            final IntVector pixel = IntVector.fromArray(INTS, argb, argbOffset + i).or(alphaMask);
+            if (colors != null)
+                pixel.and(0xFFFFFF).intoArray(colors, offset + i);
+            final FloatVector gray = gray(pixel);
+            gray.intoArray(pixels, offset + i);
+            min = min.blend(gray, gray.compare(VectorOperators.LT, min));
+            max = max.blend(gray, gray.compare(VectorOperators.GT, max));
+        }
+        minMax.add(min.reduceLanes(VectorOperators.MIN), max.reduceLanes(VectorOperators.MAX));
+        super.gray(argb, argbOffset + bound, alphaMask, pixels, colors, offset + bound, length - bound, minMax);
+    }
+
+    /**
+     * Samples are gathered to ARGB ints by a shuffle of the bytes of a vector, then converted as ints
+     */
+    @Override
+    void gray(byte[] data, int dataOffset, int pixelStride, int redOffset, int greenOffset, int blueOffset,
+              int alphaOffset, float[] pixels, int[] colors, int offset, int length, MinMax.Builder minMax) {
+        final ByteLayout layout = byteLayout(pixelStride, redOffset, greenOffset, blueOffset, alphaOffset);
+        if (layout == null) {
+            super.gray(data, dataOffset, pixelStride, redOffset, greenOffset, blueOffset, alphaOffset, pixels,
+                    colors, offset, length, minMax);
+            return;
+        }
+        final int alphaMask = alphaOffset < 0 ? 0xFF000000 : 0;
+        FloatVector min = FloatVector.broadcast(FLOATS, Float.POSITIVE_INFINITY);
+        FloatVector max = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+        int i = 0, index = dataOffset;
+        // a vector of bytes is read, past the last pixel of the row
+        for (; i + INTS.length() <= length && index + BYTES.length() <= data.length;
+             i += INTS.length(), index += INTS.length() * pixelStride) {
+            final IntVector pixel = ByteVector.fromArray(BYTES, data, index)
+                    .rearrange(layout.shuffle)
+                    .reinterpretAsInts()
+                    .or(alphaMask);
+            if (colors != null)
+                pixel.and(0xFFFFFF).intoArray(colors, offset + i);
+            final FloatVector gray = gray(pixel);
+            gray.intoArray(pixels, offset + i);
+            min = min.blend(gray, gray.compare(VectorOperators.LT, min));
+            max = max.blend(gray, gray.compare(VectorOperators.GT, max));
+        }
+        minMax.add(min.reduceLanes(VectorOperators.MIN), max.reduceLanes(VectorOperators.MAX));
+        super.gray(data, index, pixelStride, redOffset, greenOffset, blueOffset, alphaOffset, pixels, colors,
+                offset + i, length - i, minMax);
+    }
+
+    /**
+     * @see GrayscaleImage#gray(int)
+     */
+    private static FloatVector gray(IntVector argb) {
+        final FloatVector red = toFloat(argb.lanewise(VectorOperators.LSHR, 16).and(0xFF));
+        final FloatVector green = toFloat(argb.lanewise(VectorOperators.LSHR, 8).and(0xFF));
+        final FloatVector blue = toFloat(argb.and(0xFF));
+        final FloatVector alpha = toFloat(argb.lanewise(VectorOperators.ASHR, 24));
+        return red.div(255f).add(green.div(255f)).add(blue.div(255f)).div(3f)
+                .mul(FloatVector.broadcast(FLOATS, 1f).sub(alpha.div(255f)));
+    }
+
+    private static FloatVector toFloat(IntVector values) {
+        return (FloatVector) values.convert(VectorOperators.I2F, 0);
+    }
+
+    @Override
+    void lerp(float[] pixels, int from, int to, float min, float max) {
+        final int bound = from + FLOATS.loopBound(to - from);
+        for (int i = from; i < bound; i += FLOATS.length()) {
+            FloatVector.fromArray(FLOATS, pixels, i).sub(min).div(max - min).intoArray(pixels, i);
+        }
+        super.lerp(pixels, bound, to, min, max);
+    }
+
+    @Override
+    void invert(float[] pixels, int from, int to) {
+        final int bound = from + FLOATS.loopBound(to - from);
+        final FloatVector one = FloatVector.broadcast(FLOATS, 1f);
+        for (int i = from; i < bound; i += FLOATS.length()) {
+            one.sub(FloatVector.fromArray(FLOATS, pixels, i)).intoArray(pixels, i);
+        }
+        super.invert(pixels, bound, to);
+    }
+
+    /**
+     * NaN pixels are ignored, as by {@link MinMax.Builder#add(float)}
+     */
+    @Override
+    void minMax(float[] pixels, int from, int to, MinMax.Builder minMax) {
+        final int bound = from + FLOATS.loopBound(to - from);
+        FloatVector min = FloatVector.broadcast(FLOATS, Float.POSITIVE_INFINITY);
+        FloatVector max = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+        for (int i = from; i < bound; i += FLOATS.length()) {
+            final FloatVector values = FloatVector.fromArray(FLOATS, pixels, i);
+            min = min.blend(values, values.compare(VectorOperators.LT, min));
+            max = max.blend(values, values.compare(VectorOperators.GT, max));
+        }
+        minMax.add(min.reduceLanes(VectorOperators.MIN), max.reduceLanes(VectorOperators.MAX));
+        super.minMax(pixels, bound, to, minMax);
+    }
+
+    /**
+     * @return the layout of the samples, null if a pixel does not fit in an int lane
+     */
+    private ByteLayout byteLayout(int pixelStride, int redOffset, int greenOffset, int blueOffset, int alphaOffset) {
+        ByteLayout layout = byteLayout;
+        if (layout == null || !layout.matches(pixelStride, redOffset, greenOffset, blueOffset, alphaOffset)) {
+            if (pixelStride > Integer.BYTES)
+                return null;
+            layout = new ByteLayout(pixelStride, redOffset, greenOffset, blueOffset, alphaOffset);
+            byteLayout = layout;
+        }
+        return layout;
+    }
+
+    private static final class ByteLayout {
+        private final int pixelStride, redOffset, greenOffset, blueOffset, alphaOffset;
+        /**
+         * Moves the samples of pixel p to the little endian bytes of int lane p: blue, green, red and alpha. Opaque
+         * pixels alpha byte is replaced by the alpha mask.
+         */
+        private final VectorShuffle<Byte> shuffle;
+
+        private ByteLayout(int pixelStride, int redOffset, int greenOffset, int blueOffset, int alphaOffset) {
+            this.pixelStride = pixelStride;
+            this.redOffset = redOffset;
+            this.greenOffset = greenOffset;
+            this.blueOffset = blueOffset;
+            this.alphaOffset = alphaOffset;
+            final int[] indexes = new int[BYTES.length()];
+            for (int p = 0; p < INTS.length(); p++) {
+                final int index = p * pixelStride;
+                indexes[p * 4] = index + blueOffset;
+                indexes[p * 4 + 1] = index + greenOffset;
+                indexes[p * 4 + 2] = index + redOffset;
+                indexes[p * 4 + 3] = index + (alphaOffset < 0 ? blueOffset : alphaOffset);
+            }
+            shuffle = VectorShuffle.fromArray(BYTES, indexes, 0);
+        }
+
+        private boolean matches(int pixelStride, int redOffset, int greenOffset, int blueOffset, int alphaOffset) {
+            return this.pixelStride == pixelStride && this.redOffset == redOffset && this.greenOffset == greenOffset
+                    && this.blueOffset == blueOffset && this.alphaOffset == alphaOffset;
+        }
+    }
+}